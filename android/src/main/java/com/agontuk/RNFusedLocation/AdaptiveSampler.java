@@ -0,0 +1,161 @@
+package com.agontuk.RNFusedLocation;
+
+import android.location.Location;
+
+/**
+ * Picks an update rate for continuous tracking from the recent speed. Speed
+ * is smoothed over the last fixes and a new mode must hold for a while before
+ * switching to it, slowing down takes longer than speeding up so short stops
+ * don't cause the request to be re-issued back & forth.
+ */
+public class AdaptiveSampler {
+  public enum Mode {
+    stationary,
+    moving,
+    fast
+  }
+
+  private static final double SPEED_SMOOTHING = 0.3;
+  private static final float STATIONARY_ENTER_SPEED = 0.5f; /* m/s */
+  private static final float STATIONARY_EXIT_SPEED = 1.0f; /* m/s */
+  private static final float FAST_ENTER_SPEED = 10.0f; /* m/s, 36 km/h */
+  private static final float FAST_EXIT_SPEED = 7.0f; /* m/s */
+  private static final long SPEED_UP_DELAY = 5 * 1000; /* 5 secs */
+  private static final long SLOW_DOWN_DELAY = 60 * 1000; /* 60 secs */
+  private static final long MIN_FAST_INTERVAL = 1000; /* 1 sec */
+
+  private Mode mode = Mode.moving;
+  private Mode candidateMode = Mode.moving;
+  private long candidateTime;
+  private double speed;
+  private boolean hasPreviousLocation = false;
+  private double previousLatitude;
+  private double previousLongitude;
+  private long previousTime;
+  private final float[] distanceResult = new float[1];
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  public double getSpeed() {
+    return speed;
+  }
+
+  public void reset() {
+    mode = Mode.moving;
+    candidateMode = Mode.moving;
+    hasPreviousLocation = false;
+    speed = 0;
+  }
+
+  /**
+   * Feed a raw fix, returns true if the mode changed and the request should
+   * be re-issued.
+   */
+  public boolean update(Location location) {
+    long time = LocationUtils.getElapsedTime(location);
+    double currentSpeed = getSpeed(location, time);
+
+    if (currentSpeed < 0) {
+      return false;
+    }
+
+    speed = hasPreviousLocation ? speed + SPEED_SMOOTHING * (currentSpeed - speed) : currentSpeed;
+    hasPreviousLocation = true;
+    previousLatitude = location.getLatitude();
+    previousLongitude = location.getLongitude();
+    previousTime = time;
+
+    Mode targetMode = getTargetMode();
+
+    if (targetMode == mode) {
+      candidateMode = mode;
+      return false;
+    }
+
+    if (targetMode != candidateMode) {
+      candidateMode = targetMode;
+      candidateTime = time;
+    }
+
+    long delay = targetMode.ordinal() > mode.ordinal() ? SPEED_UP_DELAY : SLOW_DOWN_DELAY;
+
+    if (time - candidateTime < delay) {
+      return false;
+    }
+
+    mode = targetMode;
+    return true;
+  }
+
+  /**
+   * Options to request for the current mode. Stationary devices get a longer
+   * interval & one accuracy level lower, fast ones a shorter interval & one
+   * level higher.
+   */
+  public LocationOptions adapt(LocationOptions options) {
+    LocationAccuracy[] levels = LocationAccuracy.values();
+    int accuracy = options.getAccuracy().ordinal();
+
+    switch (mode) {
+      case stationary:
+        return options.withSampling(
+          options.getAccuracy() == LocationAccuracy.passive ? LocationAccuracy.passive : levels[Math.min(accuracy + 1, LocationAccuracy.low.ordinal())],
+          options.getInterval() * 4,
+          options.getFastestInterval() * 4
+        );
+      case fast:
+        return options.withSampling(
+          levels[Math.max(accuracy - 1, 0)],
+          Math.max(options.getInterval() / 2, MIN_FAST_INTERVAL),
+          Math.max(options.getFastestInterval() / 2, MIN_FAST_INTERVAL)
+        );
+      default:
+        return options;
+    }
+  }
+
+  private Mode getTargetMode() {
+    switch (mode) {
+      case stationary:
+        return speed > STATIONARY_EXIT_SPEED
+          ? (speed > FAST_ENTER_SPEED ? Mode.fast : Mode.moving)
+          : Mode.stationary;
+      case fast:
+        return speed < FAST_EXIT_SPEED
+          ? (speed < STATIONARY_ENTER_SPEED ? Mode.stationary : Mode.moving)
+          : Mode.fast;
+      default:
+        if (speed < STATIONARY_ENTER_SPEED) {
+          return Mode.stationary;
+        }
+
+        return speed > FAST_ENTER_SPEED ? Mode.fast : Mode.moving;
+    }
+  }
+
+  /**
+   * Reported speed if available, otherwise derived from the previous fix.
+   * Returns -1 if it can't be determined.
+   */
+  private double getSpeed(Location location, long time) {
+    if (location.hasSpeed()) {
+      return location.getSpeed();
+    }
+
+    if (!hasPreviousLocation || time <= previousTime) {
+      return hasPreviousLocation ? -1 : 0;
+    }
+
+    Location.distanceBetween(
+      previousLatitude,
+      previousLongitude,
+      location.getLatitude(),
+      location.getLongitude(),
+      distanceResult
+    );
+
+    return distanceResult[0] * 1000.0 / (time - previousTime);
+  }
+}
@@ -0,0 +1,81 @@
+package com.agontuk.RNFusedLocation;
+
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.location.Location;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.location.LocationResult;
+
+import java.util.List;
+
+/**
+ * Receives background mode updates from the fused provider and only stores
+ * them, JS isn't woken up for each fix. Files are written on a worker thread,
+ * the broadcast is kept alive with goAsync until they are.
+ */
+public class BackgroundLocationReceiver extends BroadcastReceiver {
+  private static final String ACTION = "com.agontuk.RNFusedLocation.BACKGROUND_LOCATION";
+  private static final int FLAG_MUTABLE = 1 << 25; /* PendingIntent.FLAG_MUTABLE, API 31 */
+  private static final String THREAD_NAME = RNFusedLocationModule.TAG + ".background";
+
+  @Nullable private static Handler handler;
+
+  @Override
+  public void onReceive(Context context, Intent intent) {
+    if (!ACTION.equals(intent.getAction()) || !LocationResult.hasResult(intent)) {
+      return;
+    }
+
+    LocationResult locationResult = LocationResult.extractResult(intent);
+
+    if (locationResult == null) {
+      return;
+    }
+
+    final Context applicationContext = context.getApplicationContext();
+    final List<Location> locations = locationResult.getLocations();
+    final PendingResult pendingResult = goAsync();
+
+    getHandler().post(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          BackgroundLocationStore.getInstance(applicationContext).append(locations);
+        } finally {
+          pendingResult.finish();
+        }
+      }
+    });
+  }
+
+  private static synchronized Handler getHandler() {
+    if (handler == null) {
+      HandlerThread thread = new HandlerThread(THREAD_NAME);
+      thread.start();
+      handler = new Handler(thread.getLooper());
+    }
+
+    return handler;
+  }
+
+  public static PendingIntent getPendingIntent(Context context) {
+    Intent intent = new Intent(context, BackgroundLocationReceiver.class);
+    intent.setAction(ACTION);
+
+    // Play Services adds the locations as extras, the intent must stay mutable.
+    int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+
+    if (Build.VERSION.SDK_INT >= 31) {
+      flags |= FLAG_MUTABLE;
+    }
+
+    return PendingIntent.getBroadcast(context, 0, intent, flags);
+  }
+}
@@ -0,0 +1,108 @@
+package com.agontuk.RNFusedLocation;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.location.Location;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Process wide store of locations delivered while in background mode. Fixes
+ * are appended to memory mapped files by BackgroundLocationReceiver, so they
+ * survive the process being killed, and are drained to JS in pages. The
+ * drain offset and the number of fixes dropped while full are persisted
+ * along with them.
+ */
+public class BackgroundLocationStore {
+  private static final String DIRECTORY_NAME = "RNFusedLocation/background";
+  private static final String PREFERENCES_NAME = "RNFusedLocation.background";
+  private static final String KEY_DRAIN_OFFSET = "drainOffset";
+  private static final String KEY_DROPPED_COUNT = "droppedCount";
+  private static final long MAX_SIZE = 100000;
+
+  @Nullable private static BackgroundLocationStore instance;
+
+  private final LocationRecorder locationRecorder;
+  private final SharedPreferences preferences;
+
+  private BackgroundLocationStore(Context context) {
+    this.locationRecorder = new LocationRecorder(context, DIRECTORY_NAME);
+    this.preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+  }
+
+  public static synchronized BackgroundLocationStore getInstance(Context context) {
+    if (instance == null) {
+      instance = new BackgroundLocationStore(context.getApplicationContext());
+    }
+
+    return instance;
+  }
+
+  public synchronized void append(List<Location> locations) {
+    long size;
+
+    try {
+      locationRecorder.start();
+      size = locationRecorder.getSize();
+    } catch (IOException e) {
+      Log.e(RNFusedLocationModule.TAG, "Unable to open background location store.", e);
+      return;
+    }
+
+    // Keep the oldest fixes once full, JS didn't drain the store for a long
+    // time. Dropped fixes are counted and reported with the next page.
+    int count = (int) Math.max(Math.min(locations.size(), MAX_SIZE - size), 0);
+
+    for (int i = 0; i < count; i++) {
+      locationRecorder.append(locations.get(i));
+    }
+
+    if (count < locations.size()) {
+      long droppedCount = preferences.getLong(KEY_DROPPED_COUNT, 0) + locations.size() - count;
+      Log.w(RNFusedLocationModule.TAG, "background location store is full, dropped " + droppedCount);
+      preferences.edit().putLong(KEY_DROPPED_COUNT, droppedCount).apply();
+    }
+  }
+
+  /**
+   * Remove & return up to limit of the oldest stored locations as
+   * { locations, remaining, dropped } where locations are compact locations,
+   * null when there's nothing to report.
+   */
+  @Nullable
+  public synchronized WritableMap drain(int limit) throws IOException {
+    long size = locationRecorder.getSize();
+    long offset = Math.min(preferences.getLong(KEY_DRAIN_OFFSET, 0), size);
+    long droppedCount = preferences.getLong(KEY_DROPPED_COUNT, 0);
+
+    if (offset == size && droppedCount == 0) {
+      return null;
+    }
+
+    long end = Math.min(size, offset + Math.max(limit, 1));
+    WritableMap page = Arguments.createMap();
+    page.putArray("locations", locationRecorder.readLocations(offset, end));
+    page.putDouble("remaining", size - end);
+    page.putDouble("dropped", droppedCount);
+
+    // Commit before deleting anything, a crash in between resends the page
+    // instead of losing it.
+    SharedPreferences.Editor editor = preferences.edit().remove(KEY_DROPPED_COUNT);
+
+    if (end == size) {
+      editor.remove(KEY_DRAIN_OFFSET).commit();
+      locationRecorder.clear();
+    } else {
+      editor.putLong(KEY_DRAIN_OFFSET, end).commit();
+    }
+
+    return page;
+  }
+}
@@ -0,0 +1,157 @@
+package com.agontuk.RNFusedLocation;
+
+import android.app.PendingIntent;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.IOException;
+
+/**
+ * Starts & stops background mode and sends the locations stored by
+ * BackgroundLocationReceiver to JS while it listens for them, one page per
+ * worker thread message. Not thread safe, must be used from the module's
+ * worker thread.
+ */
+public class BackgroundLocationUpdates {
+  private static final int PAGE_SIZE = 1000;
+
+  private final Context context;
+  private final EventEmitter eventEmitter;
+  private final LocationChangeListener locationChangeListener;
+  private final LocationSettingsCache locationSettingsCache;
+  private final Looper looper;
+  private final Handler handler;
+  private final Runnable emitRunnable = new Runnable() {
+    @Override
+    public void run() {
+      emitStoredLocations();
+    }
+  };
+
+  @Nullable private FusedLocationProvider locationProvider;
+  private boolean isActive = false;
+  private boolean isBatchObserved = false;
+
+  public BackgroundLocationUpdates(
+    Context context,
+    EventEmitter eventEmitter,
+    LocationChangeListener locationChangeListener,
+    LocationSettingsCache locationSettingsCache,
+    Looper looper
+  ) {
+    this.context = context;
+    this.eventEmitter = eventEmitter;
+    this.locationChangeListener = locationChangeListener;
+    this.locationSettingsCache = locationSettingsCache;
+    this.looper = looper;
+    this.handler = new Handler(looper);
+  }
+
+  /**
+   * Start delivering updates to BackgroundLocationReceiver, returns the error
+   * preventing it or null.
+   */
+  @Nullable
+  public LocationError start(LocationOptions locationOptions) {
+    // Without it updates silently stop while the app is in background.
+    if (
+      !LocationUtils.hasLocationPermission(context) ||
+      !LocationUtils.hasBackgroundLocationPermission(context)
+    ) {
+      return LocationError.PERMISSION_DENIED;
+    }
+
+    if (!PlayServices.getInstance(context).isAvailable()) {
+      return LocationError.PLAY_SERVICE_NOT_AVAILABLE;
+    }
+
+    getLocationProvider().requestBackgroundUpdates(
+      locationOptions,
+      BackgroundLocationReceiver.getPendingIntent(context)
+    );
+    isActive = true;
+    return null;
+  }
+
+  public void stop() {
+    // Updates may have been started by a previous instance, the intent matches anyway.
+    if (PlayServices.getInstance(context).isAvailable()) {
+      PendingIntent pendingIntent = BackgroundLocationReceiver.getPendingIntent(context);
+      getLocationProvider().removeBackgroundUpdates(pendingIntent);
+      pendingIntent.cancel();
+    }
+
+    locationProvider = null;
+    isActive = false;
+  }
+
+  /**
+   * Whether this instance started background updates which weren't stopped.
+   */
+  public boolean isActive() {
+    return isActive;
+  }
+
+  /**
+   * Remove & return a page of the oldest stored locations, see
+   * BackgroundLocationStore.drain.
+   */
+  @Nullable
+  public WritableMap drain(int limit) throws IOException {
+    return BackgroundLocationStore.getInstance(context).drain(limit);
+  }
+
+  /**
+   * Stored locations are only emitted while JS listens, otherwise they'd be
+   * drained and lost.
+   */
+  public void setBatchObserved(boolean isObserved) {
+    isBatchObserved = isObserved;
+    emitStoredLocations();
+  }
+
+  public void emitStoredLocations() {
+    handler.removeCallbacks(emitRunnable);
+
+    // Draining while nobody can receive the batch would lose it.
+    if (!isBatchObserved || !eventEmitter.canEmit()) {
+      return;
+    }
+
+    try {
+      WritableMap page = drain(PAGE_SIZE);
+
+      if (page == null) {
+        return;
+      }
+
+      // Let other work run between pages.
+      if (page.getDouble("remaining") > 0) {
+        handler.post(emitRunnable);
+      }
+
+      eventEmitter.emit("geolocationBackgroundBatch", page);
+    } catch (IOException e) {
+      Log.e(RNFusedLocationModule.TAG, "Unable to read background locations.", e);
+    }
+  }
+
+  private FusedLocationProvider getLocationProvider() {
+    if (locationProvider == null) {
+      locationProvider = new FusedLocationProvider(
+        context,
+        locationChangeListener,
+        locationSettingsCache,
+        looper
+      );
+    }
+
+    return locationProvider;
+  }
+}
@@ -0,0 +1,15 @@
+package com.agontuk.RNFusedLocation;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Sends events to JS, see ReactEventEmitter.
+ */
+public interface EventEmitter {
+  /**
+   * Whether emitted events can currently be received.
+   */
+  boolean canEmit();
+
+  void emit(String eventName, @Nullable Object data);
+}
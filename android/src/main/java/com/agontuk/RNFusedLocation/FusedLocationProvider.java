@@ -2,16 +2,21 @@ package com.agontuk.RNFusedLocation;
 
 import android.annotation.SuppressLint;
 import android.app.Activity;
+import android.app.PendingIntent;
+import android.content.Context;
 import android.content.IntentSender;
 import android.location.Location;
 import android.location.LocationManager;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
+import android.util.LruCache;
 
 import androidx.annotation.NonNull;
 
-import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.UiThreadUtil;
 import com.google.android.gms.common.api.ApiException;
 import com.google.android.gms.common.api.ResolvableApiException;
 import com.google.android.gms.location.FusedLocationProviderClient;
@@ -19,7 +24,6 @@ import com.google.android.gms.location.LocationAvailability;
 import com.google.android.gms.location.LocationCallback;
 import com.google.android.gms.location.LocationRequest;
 import com.google.android.gms.location.LocationResult;
-import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.location.LocationSettingsRequest;
 import com.google.android.gms.location.LocationSettingsResponse;
 import com.google.android.gms.location.LocationSettingsStatusCodes;
@@ -28,28 +32,54 @@ import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
 
 import java.util.Random;
+import java.util.concurrent.Executor;
 
 public class FusedLocationProvider implements LocationProvider {
-  private final ReactApplicationContext context;
+  private static final int REQUEST_CACHE_SIZE = 32;
+  // Requests are only read by Play Services, so providers with equal options share them.
+  private static final LruCache<LocationOptions, LocationRequest> singleRequests =
+    new LruCache<>(REQUEST_CACHE_SIZE);
+  private static final LruCache<LocationOptions, LocationRequest> continuousRequests =
+    new LruCache<>(REQUEST_CACHE_SIZE);
+
+  private final Context context;
   private final FusedLocationProviderClient fusedLocationProviderClient;
   private final LocationChangeListener locationChangeListener;
   private final SettingsClient settingsClient;
+  private final LocationSettingsCache locationSettingsCache;
+  private final Looper looper;
+  private final Handler handler;
+  private final Executor executor = new Executor() {
+    @Override
+    public void execute(@NonNull Runnable command) {
+      handler.post(command);
+    }
+  };
 
   private int activityRequestCode;
   private LocationOptions locationOptions;
   private LocationRequest locationRequest;
 
   private boolean isSingleUpdate = false;
+  private boolean isRequestActive = false;
   private final LocationCallback locationCallback = new LocationCallback() {
     @Override
     public void onLocationResult(LocationResult locationResult) {
+      if (!isSingleUpdate && locationOptions.getMaxWaitTime() > 0) {
+        locationChangeListener.onLocationBatch(
+          FusedLocationProvider.this,
+          locationResult.getLocations()
+        );
+        return;
+      }
+
       locationChangeListener.onLocationChange(
         FusedLocationProvider.this,
         locationResult.getLastLocation()
       );
 
-      if (isSingleUpdate) {
-        timeoutHandler.removeCallbacks(timeoutRunnable);
+      // Keep sampling until the module gets an accurate enough location.
+      if (isSingleUpdate && !locationOptions.isSampleUntilAccepted()) {
         fusedLocationProviderClient.removeLocationUpdates(locationCallback);
       }
     }
@@ -67,52 +97,64 @@ public class FusedLocationProvider implements LocationProvider {
       }
     }
   };
-  private final Handler timeoutHandler = new Handler(Looper.getMainLooper());
-  private final Runnable timeoutRunnable = new Runnable() {
-    @Override
-    public void run() {
-      locationChangeListener.onLocationError(
-        FusedLocationProvider.this,
-        LocationError.TIMEOUT,
-        null
-      );
-      fusedLocationProviderClient.removeLocationUpdates(locationCallback);
-    }
-  };
 
-  public FusedLocationProvider(ReactApplicationContext context, LocationChangeListener locationChangeListener) {
+  /**
+   * The settings dialog needs a ReactContext with a current activity, it's
+   * never shown for other contexts.
+   */
+  public FusedLocationProvider(
+    Context context,
+    LocationChangeListener locationChangeListener,
+    LocationSettingsCache locationSettingsCache,
+    Looper looper
+  ) {
+    PlayServices playServices = PlayServices.getInstance(context);
+
     this.context = context;
-    this.fusedLocationProviderClient = LocationServices.getFusedLocationProviderClient(context);
+    this.fusedLocationProviderClient = playServices.getFusedLocationProviderClient();
     this.locationChangeListener = locationChangeListener;
-    this.settingsClient = LocationServices.getSettingsClient(context);
+    this.settingsClient = playServices.getSettingsClient();
+    this.locationSettingsCache = locationSettingsCache;
+    this.looper = looper;
+    this.handler = new Handler(looper);
   }
 
   @SuppressLint("MissingPermission")
   @Override
   public void getCurrentLocation(final LocationOptions locationOptions) {
     this.isSingleUpdate = true;
+    this.isRequestActive = true;
     this.locationOptions = locationOptions;
-    this.locationRequest = buildLocationRequest(locationOptions);
+    this.locationRequest = getLocationRequest(locationOptions);
 
     fusedLocationProviderClient.getLastLocation()
-      .addOnSuccessListener(new OnSuccessListener<Location>() {
+      .addOnSuccessListener(executor, new OnSuccessListener<Location>() {
         @Override
         public void onSuccess(Location location) {
-          if (location != null &&
-            LocationUtils.getLocationAge(location) < locationOptions.getMaximumAge()
-          ) {
+          // Don't call back into the module once updates were removed.
+          if (!isRequestActive) {
+            return;
+          }
+
+          if (location != null && LocationUtils.isLastLocationUsable(location, locationOptions)) {
             Log.i(RNFusedLocationModule.TAG, "returning cached location.");
             locationChangeListener.onLocationChange(FusedLocationProvider.this, location);
-            return;
+
+            // Keep sampling unless the module accepted it and removed updates.
+            if (!locationOptions.isSampleUntilAccepted() || !isRequestActive) {
+              return;
+            }
           }
 
           checkLocationSettings();
         }
       })
-      .addOnFailureListener(new OnFailureListener() {
+      .addOnFailureListener(executor, new OnFailureListener() {
         @Override
         public void onFailure(@NonNull Exception e) {
-          checkLocationSettings();
+          if (isRequestActive) {
+            checkLocationSettings();
+          }
         }
       });
   }
@@ -123,6 +165,11 @@ public class FusedLocationProvider implements LocationProvider {
       return false;
     }
 
+    // The dialog outlived the request, nothing is waiting for the result.
+    if (!isRequestActive) {
+      return true;
+    }
+
     if (resultCode == Activity.RESULT_OK) {
       startLocationUpdates();
       return true;
@@ -147,16 +194,46 @@ public class FusedLocationProvider implements LocationProvider {
   @Override
   public void requestLocationUpdates(LocationOptions locationOptions) {
     this.isSingleUpdate = false;
+    this.isRequestActive = true;
     this.locationOptions = locationOptions;
-    this.locationRequest = buildLocationRequest(locationOptions);
+    this.locationRequest = getLocationRequest(locationOptions);
     checkLocationSettings();
   }
 
   @Override
   public void removeLocationUpdates() {
+    isRequestActive = false;
     fusedLocationProviderClient.removeLocationUpdates(locationCallback);
   }
 
+  /**
+   * Deliver updates to the given PendingIntent instead of the callback, they
+   * keep arriving while JS or the whole process isn't running. The settings
+   * check is skipped, no dialog can be shown from the background.
+   */
+  @SuppressLint("MissingPermission")
+  public void requestBackgroundUpdates(LocationOptions locationOptions, PendingIntent pendingIntent) {
+    this.isSingleUpdate = false;
+    this.locationOptions = locationOptions;
+    fusedLocationProviderClient.requestLocationUpdates(getLocationRequest(locationOptions), pendingIntent);
+  }
+
+  public void removeBackgroundUpdates(PendingIntent pendingIntent) {
+    fusedLocationProviderClient.removeLocationUpdates(pendingIntent);
+  }
+
+  private LocationRequest getLocationRequest(LocationOptions options) {
+    LruCache<LocationOptions, LocationRequest> requests = isSingleUpdate ? singleRequests : continuousRequests;
+    LocationRequest locationRequest = requests.get(options);
+
+    if (locationRequest == null) {
+      locationRequest = buildLocationRequest(options);
+      requests.put(options, locationRequest);
+    }
+
+    return locationRequest;
+  }
+
   private LocationRequest buildLocationRequest(LocationOptions options) {
     LocationRequest locationRequest = new LocationRequest();
     int priority = getLocationPriority(options.getAccuracy());
@@ -164,26 +241,43 @@ public class FusedLocationProvider implements LocationProvider {
     locationRequest.setPriority(priority)
       .setInterval(options.getInterval())
       .setFastestInterval(options.getFastestInterval())
+      .setMaxWaitTime(isSingleUpdate ? 0 : options.getMaxWaitTime())
       .setSmallestDisplacement(isSingleUpdate ? 0 : options.getDistanceFilter());
 
     return locationRequest;
   }
 
   private void checkLocationSettings() {
+    final int priority = locationRequest.getPriority();
+
+    if (locationSettingsCache.isSatisfied(priority)) {
+      startLocationUpdates();
+      return;
+    }
+
+    final int generation = locationSettingsCache.getGeneration();
+    final long startTime = SystemClock.elapsedRealtime();
     LocationSettingsRequest.Builder builder = new LocationSettingsRequest.Builder();
     builder.addLocationRequest(locationRequest);
     LocationSettingsRequest locationSettingsRequest = builder.build();
 
     settingsClient.checkLocationSettings(locationSettingsRequest)
-      .addOnSuccessListener(new OnSuccessListener<LocationSettingsResponse>() {
+      .addOnSuccessListener(executor, new OnSuccessListener<LocationSettingsResponse>() {
         @Override
         public void onSuccess(LocationSettingsResponse locationSettingsResponse) {
+          locationSettingsCache.setSatisfied(priority, generation, startTime);
           startLocationUpdates();
         }
       })
-      .addOnFailureListener(new OnFailureListener() {
+      .addOnFailureListener(executor, new OnFailureListener() {
         @Override
         public void onFailure(@NonNull Exception e) {
+          locationSettingsCache.setUnsatisfied(startTime);
+
+          if (!isRequestActive) {
+            return;
+          }
+
           ApiException exception = (ApiException) e;
 
           switch (exception.getStatusCode()) {
@@ -206,29 +300,16 @@ public class FusedLocationProvider implements LocationProvider {
                 break;
               }
 
-              try {
-                ResolvableApiException resolvable = (ResolvableApiException) exception;
-                Activity activity = context.getCurrentActivity();
-
-                if (activity == null) {
-                  locationChangeListener.onLocationError(
-                    FusedLocationProvider.this,
-                    LocationError.INTERNAL_ERROR,
-                    "Tried to open location dialog while not attached to an Activity."
-                  );
-                  break;
-                }
-
-                activityRequestCode = getActivityRequestCode();
-                resolvable.startResolutionForResult(activity, activityRequestCode);
-              } catch (IntentSender.SendIntentException | ClassCastException sie) {
+              if (!(exception instanceof ResolvableApiException)) {
                 locationChangeListener.onLocationError(
                   FusedLocationProvider.this,
                   LocationError.INTERNAL_ERROR,
                   null
                 );
+                break;
               }
 
+              showLocationDialog((ResolvableApiException) exception);
               break;
             case LocationSettingsStatusCodes.SETTINGS_CHANGE_UNAVAILABLE:
               if (LocationUtils.isOnAirplaneMode(context) &&
@@ -249,6 +330,51 @@ public class FusedLocationProvider implements LocationProvider {
       });
   }
 
+  /**
+   * The settings dialog is the only work which needs the main thread, errors
+   * are reported back on the provider's looper.
+   */
+  private void showLocationDialog(final ResolvableApiException resolvable) {
+    final Activity activity = context instanceof ReactContext
+      ? ((ReactContext) context).getCurrentActivity()
+      : null;
+
+    if (activity == null) {
+      locationChangeListener.onLocationError(
+        FusedLocationProvider.this,
+        LocationError.INTERNAL_ERROR,
+        "Tried to open location dialog while not attached to an Activity."
+      );
+      return;
+    }
+
+    activityRequestCode = getActivityRequestCode();
+
+    UiThreadUtil.runOnUiThread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          resolvable.startResolutionForResult(activity, activityRequestCode);
+        } catch (IntentSender.SendIntentException sie) {
+          handler.post(new Runnable() {
+            @Override
+            public void run() {
+              if (!isRequestActive) {
+                return;
+              }
+
+              locationChangeListener.onLocationError(
+                FusedLocationProvider.this,
+                LocationError.INTERNAL_ERROR,
+                null
+              );
+            }
+          });
+        }
+      }
+    });
+  }
+
   private int getActivityRequestCode() {
     Random random = new Random();
     return random.nextInt(10000);
@@ -271,14 +397,11 @@ public class FusedLocationProvider implements LocationProvider {
 
   @SuppressLint("MissingPermission")
   private void startLocationUpdates() {
-    fusedLocationProviderClient.requestLocationUpdates(locationRequest, locationCallback, Looper.getMainLooper());
-
-    if (isSingleUpdate) {
-      long timeout = locationOptions.getTimeout();
-
-      if (timeout > 0 && timeout != Long.MAX_VALUE) {
-        timeoutHandler.postDelayed(timeoutRunnable, timeout);
-      }
+    // Updates might have been removed while waiting for last location or settings check.
+    if (!isRequestActive) {
+      return;
     }
+
+    fusedLocationProviderClient.requestLocationUpdates(locationRequest, locationCallback, looper);
   }
 }
@@ -0,0 +1,7 @@
+package com.agontuk.RNFusedLocation;
+
+import android.location.Location;
+
+public interface GeofenceListener {
+  void onGeofenceTransition(GeofenceTransition transition, String geofenceId, Location location);
+}
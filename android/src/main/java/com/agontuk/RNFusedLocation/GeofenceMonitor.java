@@ -0,0 +1,112 @@
+package com.agontuk.RNFusedLocation;
+
+import android.location.Location;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Geofences registered from JS along with the options continuous updates run
+ * with while any of them is registered. Transitions are emitted as events.
+ * Not thread safe, must be used from the module's worker thread.
+ */
+public class GeofenceMonitor implements GeofenceListener {
+  // Beyond maxWaitTime, eg. a last known location delivered on start.
+  private static final long MAX_LOCATION_AGE = 60 * 1000; /* 60 secs */
+
+  private final GeofenceRegistry geofenceRegistry;
+  private final EventEmitter eventEmitter;
+
+  @Nullable private LocationOptions locationOptions;
+  private long lastEvaluatedTime = Long.MIN_VALUE;
+
+  public GeofenceMonitor(EventEmitter eventEmitter) {
+    this.geofenceRegistry = new GeofenceRegistry(this);
+    this.eventEmitter = eventEmitter;
+  }
+
+  /**
+   * Options of the continuous updates needed by the geofences, null when
+   * none is registered.
+   */
+  @Nullable
+  public LocationOptions getLocationOptions() {
+    return locationOptions;
+  }
+
+  public int size() {
+    return geofenceRegistry.size();
+  }
+
+  /**
+   * Register all geofences or none of them, throws when any is invalid.
+   * Options are combined with the ones of earlier calls, as their geofences
+   * still need them.
+   */
+  public void add(ReadableArray geofences, LocationOptions locationOptions) {
+    geofenceRegistry.addAll(geofences);
+
+    List<LocationOptions> optionsList = new ArrayList<>();
+    optionsList.add(locationOptions);
+
+    if (this.locationOptions != null) {
+      optionsList.add(this.locationOptions);
+    }
+
+    this.locationOptions = LocationOptions.combine(optionsList);
+  }
+
+  public void remove(ReadableArray ids) {
+    for (int i = 0; i < ids.size(); i++) {
+      geofenceRegistry.remove(ids.getString(i));
+    }
+
+    if (geofenceRegistry.isEmpty()) {
+      locationOptions = null;
+      lastEvaluatedTime = Long.MIN_VALUE;
+    }
+  }
+
+  public void clear() {
+    geofenceRegistry.clear();
+    locationOptions = null;
+    lastEvaluatedTime = Long.MIN_VALUE;
+  }
+
+  /**
+   * Check a continuous fix against the geofences. Fixes less accurate than
+   * maxAccuracy, stale ones & ones older than the last checked fix are
+   * skipped, they could report transitions that never happened.
+   */
+  public void evaluate(Location location) {
+    if (locationOptions == null || location.getAccuracy() > locationOptions.getMaxAccuracy()) {
+      return;
+    }
+
+    long time = LocationUtils.getElapsedTime(location);
+
+    if (time <= lastEvaluatedTime ||
+      LocationUtils.getLocationAge(location) > locationOptions.getMaxWaitTime() + MAX_LOCATION_AGE
+    ) {
+      return;
+    }
+
+    lastEvaluatedTime = time;
+    geofenceRegistry.evaluate(location);
+  }
+
+  @Override
+  public void onGeofenceTransition(GeofenceTransition transition, String geofenceId, Location location) {
+    WritableMap data = Arguments.createMap();
+    data.putString("id", geofenceId);
+    data.putMap("position", LocationUtils.locationToMap(location));
+
+    eventEmitter.emit(transition.getEventName(), data);
+  }
+}
@@ -0,0 +1,306 @@
+package com.agontuk.RNFusedLocation;
+
+import android.location.Location;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Circle & polygon geofences evaluated natively against every fix, so only
+ * transitions have to cross the bridge. Fences are indexed in a uniform grid
+ * of their bounding boxes, a fix is only tested against the fences of its own
+ * cell and the ones it is currently inside. Not thread safe, must be used
+ * from the module's worker thread.
+ */
+public class GeofenceRegistry {
+  private static final double METERS_PER_DEGREE = 111319.49;
+  private static final double CELL_SIZE = 0.01; /* degrees, ~1.1km */
+  private static final int MAX_CELLS_PER_FENCE = 64;
+
+  private final GeofenceListener listener;
+  private final HashMap<String, Geofence> geofences = new HashMap<>();
+  private final HashMap<Long, List<Geofence>> cells = new HashMap<>();
+  private final List<Geofence> largeGeofences = new ArrayList<>();
+  private final List<Geofence> insideGeofences = new ArrayList<>();
+
+  public GeofenceRegistry(GeofenceListener listener) {
+    this.listener = listener;
+  }
+
+  public boolean isEmpty() {
+    return geofences.isEmpty();
+  }
+
+  public int size() {
+    return geofences.size();
+  }
+
+  /**
+   * Add fences described by either latitude, longitude & radius or a flat
+   * [lat, lng, lat, lng, ...] polygon. Existing fences with the same ids are
+   * replaced. All fences are validated first, nothing is added if any of
+   * them is invalid.
+   */
+  public void addAll(ReadableArray maps) {
+    List<Geofence> parsed = new ArrayList<>(maps.size());
+
+    for (int i = 0; i < maps.size(); i++) {
+      parsed.add(Geofence.fromReadableMap(maps.getMap(i)));
+    }
+
+    for (Geofence geofence: parsed) {
+      add(geofence);
+    }
+  }
+
+  private void add(Geofence geofence) {
+    remove(geofence.id);
+    geofences.put(geofence.id, geofence);
+
+    int minRow = getCellIndex(geofence.minLatitude);
+    int maxRow = getCellIndex(geofence.maxLatitude);
+    int minColumn = getCellIndex(geofence.minLongitude);
+    int maxColumn = getCellIndex(geofence.maxLongitude);
+
+    if ((long) (maxRow - minRow + 1) * (maxColumn - minColumn + 1) > MAX_CELLS_PER_FENCE) {
+      largeGeofences.add(geofence);
+      return;
+    }
+
+    for (int row = minRow; row <= maxRow; row++) {
+      for (int column = minColumn; column <= maxColumn; column++) {
+        long key = getCellKey(row, column);
+        List<Geofence> cell = cells.get(key);
+
+        if (cell == null) {
+          cell = new ArrayList<>(4);
+          cells.put(key, cell);
+        }
+
+        cell.add(geofence);
+      }
+    }
+  }
+
+  /**
+   * Remove a fence without emitting an exit transition.
+   */
+  public void remove(String id) {
+    Geofence geofence = geofences.remove(id);
+
+    if (geofence == null) {
+      return;
+    }
+
+    insideGeofences.remove(geofence);
+
+    if (largeGeofences.remove(geofence)) {
+      return;
+    }
+
+    for (int row = getCellIndex(geofence.minLatitude); row <= getCellIndex(geofence.maxLatitude); row++) {
+      for (int column = getCellIndex(geofence.minLongitude); column <= getCellIndex(geofence.maxLongitude); column++) {
+        long key = getCellKey(row, column);
+        List<Geofence> cell = cells.get(key);
+
+        if (cell != null && cell.remove(geofence) && cell.isEmpty()) {
+          cells.remove(key);
+        }
+      }
+    }
+  }
+
+  public void clear() {
+    geofences.clear();
+    cells.clear();
+    largeGeofences.clear();
+    insideGeofences.clear();
+  }
+
+  /**
+   * Test the location against nearby fences and report enter, exit & dwell
+   * transitions to the listener.
+   */
+  public void evaluate(Location location) {
+    if (geofences.isEmpty()) {
+      return;
+    }
+
+    double latitude = location.getLatitude();
+    double longitude = location.getLongitude();
+    long time = LocationUtils.getElapsedTime(location);
+
+    for (int i = insideGeofences.size() - 1; i >= 0; i--) {
+      Geofence geofence = insideGeofences.get(i);
+
+      if (!geofence.contains(latitude, longitude)) {
+        geofence.isInside = false;
+        insideGeofences.remove(i);
+        listener.onGeofenceTransition(GeofenceTransition.EXIT, geofence.id, location);
+      } else if (!geofence.isDwelling && geofence.dwellTime > 0 && time - geofence.enterTime >= geofence.dwellTime) {
+        geofence.isDwelling = true;
+        listener.onGeofenceTransition(GeofenceTransition.DWELL, geofence.id, location);
+      }
+    }
+
+    List<Geofence> cell = cells.get(getCellKey(getCellIndex(latitude), getCellIndex(longitude)));
+
+    if (cell != null) {
+      evaluateEnter(cell, location, time);
+    }
+
+    evaluateEnter(largeGeofences, location, time);
+  }
+
+  private void evaluateEnter(List<Geofence> candidates, Location location, long time) {
+    for (int i = 0, size = candidates.size(); i < size; i++) {
+      Geofence geofence = candidates.get(i);
+
+      if (geofence.isInside || !geofence.contains(location.getLatitude(), location.getLongitude())) {
+        continue;
+      }
+
+      geofence.isInside = true;
+      geofence.isDwelling = false;
+      geofence.enterTime = time;
+      insideGeofences.add(geofence);
+      listener.onGeofenceTransition(GeofenceTransition.ENTER, geofence.id, location);
+    }
+  }
+
+  private static int getCellIndex(double degrees) {
+    return (int) Math.floor(degrees / CELL_SIZE);
+  }
+
+  private static long getCellKey(int row, int column) {
+    return ((long) row << 32) | (column & 0xffffffffL);
+  }
+
+  private static class Geofence {
+    final String id;
+    final long dwellTime;
+    final double latitude;
+    final double longitude;
+    final double radius;
+    final double metersPerDegreeLongitude;
+    @Nullable final double[] polygon;
+    double minLatitude;
+    double maxLatitude;
+    double minLongitude;
+    double maxLongitude;
+
+    boolean isInside = false;
+    boolean isDwelling = false;
+    long enterTime;
+
+    private Geofence(String id, long dwellTime, double latitude, double longitude, double radius, @Nullable double[] polygon) {
+      this.id = id;
+      this.dwellTime = dwellTime;
+      this.latitude = latitude;
+      this.longitude = longitude;
+      this.radius = radius;
+      this.metersPerDegreeLongitude = METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+      this.polygon = polygon;
+
+      if (polygon == null) {
+        double latitudeDelta = radius / METERS_PER_DEGREE;
+        double longitudeDelta = radius / Math.max(metersPerDegreeLongitude, 1);
+
+        minLatitude = latitude - latitudeDelta;
+        maxLatitude = latitude + latitudeDelta;
+        minLongitude = longitude - longitudeDelta;
+        maxLongitude = longitude + longitudeDelta;
+        return;
+      }
+
+      minLatitude = maxLatitude = polygon[0];
+      minLongitude = maxLongitude = polygon[1];
+
+      for (int i = 2; i + 1 < polygon.length; i += 2) {
+        minLatitude = Math.min(minLatitude, polygon[i]);
+        maxLatitude = Math.max(maxLatitude, polygon[i]);
+        minLongitude = Math.min(minLongitude, polygon[i + 1]);
+        maxLongitude = Math.max(maxLongitude, polygon[i + 1]);
+      }
+    }
+
+    static Geofence fromReadableMap(@Nullable ReadableMap map) {
+      if (map == null || !map.hasKey("id") || map.getString("id") == null) {
+        throw new IllegalArgumentException("Geofence needs an id.");
+      }
+
+      String id = map.getString("id");
+      long dwellTime = map.hasKey("dwellTime") ? (long) map.getDouble("dwellTime") : 0;
+
+      if (map.hasKey("polygon")) {
+        ReadableArray points = map.getArray("polygon");
+
+        if (points == null || points.size() < 6 || points.size() % 2 != 0) {
+          throw new IllegalArgumentException(
+            "Geofence " + id + " polygon needs at least 3 points as latitude, longitude pairs."
+          );
+        }
+
+        double[] polygon = new double[points.size()];
+
+        for (int i = 0; i < polygon.length; i++) {
+          polygon[i] = points.getDouble(i);
+        }
+
+        return new Geofence(id, dwellTime, polygon[0], polygon[1], 0, polygon);
+      }
+
+      double radius = map.getDouble("radius");
+
+      if (!(radius > 0)) {
+        throw new IllegalArgumentException("Geofence " + id + " radius must be positive.");
+      }
+
+      return new Geofence(
+        id,
+        dwellTime,
+        map.getDouble("latitude"),
+        map.getDouble("longitude"),
+        radius,
+        null
+      );
+    }
+
+    boolean contains(double pointLatitude, double pointLongitude) {
+      if (pointLatitude < minLatitude || pointLatitude > maxLatitude ||
+        pointLongitude < minLongitude || pointLongitude > maxLongitude) {
+        return false;
+      }
+
+      if (polygon == null) {
+        double dx = (pointLongitude - longitude) * metersPerDegreeLongitude;
+        double dy = (pointLatitude - latitude) * METERS_PER_DEGREE;
+        return dx * dx + dy * dy <= radius * radius;
+      }
+
+      // Ray casting, polygons are small enough to treat degrees as planar.
+      boolean result = false;
+      int count = polygon.length / 2;
+
+      for (int i = 0, j = count - 1; i < count; j = i++) {
+        double latitudeI = polygon[i * 2];
+        double longitudeI = polygon[i * 2 + 1];
+        double latitudeJ = polygon[j * 2];
+        double longitudeJ = polygon[j * 2 + 1];
+
+        if ((latitudeI > pointLatitude) != (latitudeJ > pointLatitude) &&
+          pointLongitude < (longitudeJ - longitudeI) * (pointLatitude - latitudeI) / (latitudeJ - latitudeI) + longitudeI) {
+          result = !result;
+        }
+      }
+
+      return result;
+    }
+  }
+}
@@ -0,0 +1,17 @@
+package com.agontuk.RNFusedLocation;
+
+public enum GeofenceTransition {
+  ENTER("geofenceEnter"),
+  EXIT("geofenceExit"),
+  DWELL("geofenceDwell");
+
+  private final String eventName;
+
+  GeofenceTransition(String eventName) {
+    this.eventName = eventName;
+  }
+
+  public String getEventName() {
+    return eventName;
+  }
+}
@@ -0,0 +1,258 @@
+package com.agontuk.RNFusedLocation;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.location.Location;
+import android.os.Build;
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+
+import java.util.EnumMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the latest fix for every accuracy level so getCurrentPosition can be
+ * answered without talking to the location providers. Fixes are filed under
+ * the level their own accuracy reaches, whatever the request asked for.
+ * Entries are only written to shared preferences to survive process
+ * restarts once persistence is turned on.
+ */
+public class LocationCache {
+  private static final String PREFERENCES_NAME = "RNFusedLocationCache";
+  private static final String SEPARATOR = ",";
+  private static final long PERSIST_INTERVAL = 30 * 1000; /* 30 secs */
+  // Worst horizontal accuracy in meters of each level, see docs/accuracy.md
+  private static final float HIGH_ACCURACY = 20;
+  private static final float BALANCED_ACCURACY = 100;
+  private static final float LOW_ACCURACY = 10000;
+
+  private final Context context;
+  private final EnumMap<LocationAccuracy, Location> locations;
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+
+  private boolean isRestored = false;
+  private boolean isPersistent = false;
+  private long lastPersistTime = 0;
+
+  public LocationCache(Context context) {
+    this.context = context.getApplicationContext();
+    this.locations = new EnumMap<>(LocationAccuracy.class);
+  }
+
+  public synchronized void put(Location location) {
+    restore();
+    locations.put(getAccuracyLevel(location), location);
+
+    long now = SystemClock.elapsedRealtime();
+
+    if (now - lastPersistTime >= PERSIST_INTERVAL) {
+      lastPersistTime = now;
+      persist();
+    }
+  }
+
+  /**
+   * Returns the freshest cached location recorded with the same or better
+   * accuracy that is not older than maximumAge.
+   */
+  @Nullable
+  public synchronized Location get(LocationAccuracy accuracy, double maximumAge) {
+    if (maximumAge <= 0) {
+      return null;
+    }
+
+    restore();
+
+    Location bestLocation = null;
+    long bestAge = Long.MAX_VALUE;
+
+    for (LocationAccuracy level: LocationAccuracy.values()) {
+      if (level.ordinal() > accuracy.ordinal()) {
+        break;
+      }
+
+      Location location = locations.get(level);
+
+      if (location == null) {
+        continue;
+      }
+
+      long age = LocationUtils.getLocationAge(location);
+
+      if (age >= 0 && age < maximumAge && age < bestAge) {
+        bestLocation = location;
+        bestAge = age;
+      }
+    }
+
+    if (bestLocation == null) {
+      missCount.incrementAndGet();
+      return null;
+    }
+
+    hitCount.incrementAndGet();
+    return bestLocation;
+  }
+
+  /**
+   * Start writing fixes to disk and restore the snapshot stored by an earlier
+   * run, or stop writing them and delete it. Fixes stay cached in memory
+   * either way.
+   */
+  public synchronized void setPersistent(boolean persistent) {
+    if (persistent == isPersistent) {
+      return;
+    }
+
+    isPersistent = persistent;
+
+    if (persistent) {
+      restore();
+      persist();
+    } else {
+      getPreferences().edit().clear().apply();
+    }
+  }
+
+  /**
+   * Drop all cached fixes, from memory and disk.
+   */
+  public synchronized void clear() {
+    locations.clear();
+    isRestored = true;
+    getPreferences().edit().clear().apply();
+  }
+
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * Write the current snapshot to disk.
+   */
+  public synchronized void persist() {
+    if (!isPersistent) {
+      return;
+    }
+
+    SharedPreferences.Editor editor = getPreferences().edit();
+
+    for (LocationAccuracy level: LocationAccuracy.values()) {
+      Location location = locations.get(level);
+
+      // Mock flag can't be restored, so never persist mocked locations.
+      if (location == null || isFromMockProvider(location)) {
+        continue;
+      }
+
+      editor.putString(level.name(), serialize(location));
+    }
+
+    editor.apply();
+  }
+
+  private void restore() {
+    if (isRestored || !isPersistent) {
+      return;
+    }
+
+    isRestored = true;
+    SharedPreferences preferences = getPreferences();
+
+    for (LocationAccuracy level: LocationAccuracy.values()) {
+      Location location = deserialize(preferences.getString(level.name(), null));
+
+      if (location != null && !locations.containsKey(level)) {
+        locations.put(level, location);
+      }
+    }
+  }
+
+  private static LocationAccuracy getAccuracyLevel(Location location) {
+    float accuracy = location.getAccuracy();
+
+    if (!location.hasAccuracy() || accuracy > LOW_ACCURACY) {
+      return LocationAccuracy.passive;
+    }
+
+    if (accuracy > BALANCED_ACCURACY) {
+      return LocationAccuracy.low;
+    }
+
+    return accuracy > HIGH_ACCURACY ? LocationAccuracy.balanced : LocationAccuracy.high;
+  }
+
+  private SharedPreferences getPreferences() {
+    return context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+  }
+
+  private static boolean isFromMockProvider(Location location) {
+    return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2 && location.isFromMockProvider();
+  }
+
+  private static String serialize(Location location) {
+    float verticalAccuracy = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+      ? location.getVerticalAccuracyMeters()
+      : 0;
+
+    return location.getLatitude() + SEPARATOR +
+      location.getLongitude() + SEPARATOR +
+      location.getAltitude() + SEPARATOR +
+      location.getAccuracy() + SEPARATOR +
+      location.getBearing() + SEPARATOR +
+      location.getSpeed() + SEPARATOR +
+      verticalAccuracy + SEPARATOR +
+      location.getTime() + SEPARATOR +
+      location.getProvider();
+  }
+
+  @Nullable
+  private static Location deserialize(@Nullable String value) {
+    if (value == null) {
+      return null;
+    }
+
+    String[] fields = value.split(SEPARATOR);
+
+    if (fields.length != 9) {
+      return null;
+    }
+
+    try {
+      long time = Long.parseLong(fields[7]);
+      long age = System.currentTimeMillis() - time;
+
+      if (age < 0) {
+        return null;
+      }
+
+      Location location = new Location(fields[8]);
+      location.setLatitude(Double.parseDouble(fields[0]));
+      location.setLongitude(Double.parseDouble(fields[1]));
+      location.setAltitude(Double.parseDouble(fields[2]));
+      location.setAccuracy(Float.parseFloat(fields[3]));
+      location.setBearing(Float.parseFloat(fields[4]));
+      location.setSpeed(Float.parseFloat(fields[5]));
+      location.setTime(time);
+
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+        location.setVerticalAccuracyMeters(Float.parseFloat(fields[6]));
+      }
+
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+        // Elapsed realtime restarts on boot, rebuild it from the wall clock age.
+        location.setElapsedRealtimeNanos(SystemClock.elapsedRealtimeNanos() - age * 1000000);
+      }
+
+      return location;
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+}
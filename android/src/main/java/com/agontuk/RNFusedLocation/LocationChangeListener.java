@@ -4,8 +4,12 @@ import android.location.Location;
 
 import androidx.annotation.Nullable;
 
+import java.util.List;
+
 public interface LocationChangeListener {
   void onLocationChange(LocationProvider locationProvider, Location location);
 
+  void onLocationBatch(LocationProvider locationProvider, List<Location> locations);
+
   void onLocationError(LocationProvider locationProvider, LocationError error, @Nullable String message);
 }
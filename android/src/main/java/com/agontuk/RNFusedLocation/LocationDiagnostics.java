@@ -0,0 +1,190 @@
+package com.agontuk.RNFusedLocation;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histograms & counters describing how requests behave. Everything is
+ * recorded with atomics only, so it's cheap enough to always be enabled and
+ * safe to record from any thread.
+ */
+public class LocationDiagnostics {
+  private static final String[] PROVIDER_TYPES = {"fused", "locationManager"};
+  private static final String[] FIRST_FIX_SOURCES = {"fused", "gps", "network", "passive"};
+
+  private final Histogram[] timeToFirstFix;
+  private final Histogram[] firstFixWins;
+  private final Histogram timeToFix = new Histogram();
+  private final Histogram settingsCheckLatency = new Histogram();
+  private final Histogram fixToEmitLatency = new Histogram();
+  private final AtomicLong timeouts = new AtomicLong();
+  private final AtomicLong fixesEmitted = new AtomicLong();
+  private final AtomicLongArray errors = new AtomicLongArray(LocationError.values().length);
+
+  public LocationDiagnostics() {
+    int tierCount = LocationAccuracy.values().length;
+    this.timeToFirstFix = new Histogram[PROVIDER_TYPES.length * tierCount];
+
+    for (int i = 0; i < timeToFirstFix.length; i++) {
+      timeToFirstFix[i] = new Histogram();
+    }
+
+    this.firstFixWins = new Histogram[FIRST_FIX_SOURCES.length];
+
+    for (int i = 0; i < firstFixWins.length; i++) {
+      firstFixWins[i] = new Histogram();
+    }
+  }
+
+  public void recordTimeToFirstFix(LocationProvider locationProvider, LocationAccuracy accuracy, long time) {
+    int type = locationProvider instanceof FusedLocationProvider ? 0 : 1;
+    timeToFirstFix[type * LocationAccuracy.values().length + accuracy.ordinal()].record(time);
+  }
+
+  /**
+   * A fast first fix race was won by the given source after time ms.
+   */
+  public void recordFirstFixWin(String source, long time) {
+    for (int i = 0; i < FIRST_FIX_SOURCES.length; i++) {
+      if (FIRST_FIX_SOURCES[i].equals(source)) {
+        firstFixWins[i].record(time);
+        return;
+      }
+    }
+  }
+
+  /**
+   * A getCurrentPosition request was answered by a provider after time ms.
+   */
+  public void recordTimeToFix(long time) {
+    timeToFix.record(time);
+  }
+
+  public void recordSettingsCheck(long time) {
+    settingsCheckLatency.record(time);
+  }
+
+  /**
+   * A fix was sent to JS latency microseconds after its provider callback.
+   */
+  public void recordFixEmitted(long latency) {
+    fixesEmitted.incrementAndGet();
+    fixToEmitLatency.record(latency);
+  }
+
+  public void recordTimeout() {
+    timeouts.incrementAndGet();
+  }
+
+  public void recordError(LocationError error) {
+    errors.incrementAndGet(error.ordinal());
+  }
+
+  public WritableMap toMap() {
+    LocationAccuracy[] tiers = LocationAccuracy.values();
+    WritableMap timeToFirstFixMap = Arguments.createMap();
+
+    for (int type = 0; type < PROVIDER_TYPES.length; type++) {
+      WritableMap typeMap = Arguments.createMap();
+
+      for (LocationAccuracy tier: tiers) {
+        typeMap.putMap(tier.name(), timeToFirstFix[type * tiers.length + tier.ordinal()].toMap());
+      }
+
+      timeToFirstFixMap.putMap(PROVIDER_TYPES[type], typeMap);
+    }
+
+    WritableMap errorsMap = Arguments.createMap();
+
+    for (LocationError error: LocationError.values()) {
+      errorsMap.putDouble(String.valueOf(error.getValue()), errors.get(error.ordinal()));
+    }
+
+    WritableMap firstFixWinsMap = Arguments.createMap();
+
+    for (int i = 0; i < FIRST_FIX_SOURCES.length; i++) {
+      firstFixWinsMap.putMap(FIRST_FIX_SOURCES[i], firstFixWins[i].toMap());
+    }
+
+    WritableMap map = Arguments.createMap();
+    map.putMap("timeToFirstFix", timeToFirstFixMap);
+    map.putMap("firstFixWins", firstFixWinsMap);
+    map.putMap("timeToFix", timeToFix.toMap());
+    map.putMap("settingsCheckLatency", settingsCheckLatency.toMap());
+    map.putMap("fixToEmitLatency", fixToEmitLatency.toMap());
+    map.putDouble("timeouts", timeouts.get());
+    map.putDouble("fixesEmitted", fixesEmitted.get());
+    map.putMap("errors", errorsMap);
+
+    return map;
+  }
+
+  /**
+   * Histogram of non negative values with power of two buckets, bucket i
+   * holds values below 2^i.
+   */
+  static class Histogram {
+    private static final int BUCKET_COUNT = 24; /* up to ~2.3 hours in ms */
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long value) {
+      long clamped = Math.max(value, 0);
+      int bucket = Math.min(64 - Long.numberOfLeadingZeros(clamped), BUCKET_COUNT - 1);
+
+      buckets.incrementAndGet(bucket);
+      count.incrementAndGet();
+      sum.addAndGet(clamped);
+
+      long current = max.get();
+
+      while (clamped > current && !max.compareAndSet(current, clamped)) {
+        current = max.get();
+      }
+    }
+
+    /**
+     * Upper bound of the bucket holding the given percentile.
+     */
+    private long getPercentile(long[] snapshot, long total, double percentile) {
+      long threshold = (long) Math.ceil(total * percentile);
+      long seen = 0;
+
+      for (int i = 0; i < snapshot.length; i++) {
+        seen += snapshot[i];
+
+        if (seen >= threshold) {
+          return Math.min(1L << i, max.get());
+        }
+      }
+
+      return max.get();
+    }
+
+    WritableMap toMap() {
+      long[] snapshot = new long[BUCKET_COUNT];
+      long total = 0;
+
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        snapshot[i] = buckets.get(i);
+        total += snapshot[i];
+      }
+
+      WritableMap map = Arguments.createMap();
+      map.putDouble("count", total);
+      map.putDouble("mean", total > 0 ? (double) sum.get() / count.get() : 0);
+      map.putDouble("p50", total > 0 ? getPercentile(snapshot, total, 0.5) : 0);
+      map.putDouble("p90", total > 0 ? getPercentile(snapshot, total, 0.9) : 0);
+      map.putDouble("p99", total > 0 ? getPercentile(snapshot, total, 0.99) : 0);
+      map.putDouble("max", max.get());
+
+      return map;
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package com.agontuk.RNFusedLocation;
+
+import android.location.Location;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drops continuous updates no watcher could use before they are serialized.
+ * Runs with the combined options of all watchers, so it only removes
+ * locations every watcher would reject anyway.
+ */
+public class LocationFilter {
+  private final AtomicLong passedCount = new AtomicLong();
+  private final AtomicLong inaccurateCount = new AtomicLong();
+  private final AtomicLong throttledCount = new AtomicLong();
+  private final AtomicLong duplicateCount = new AtomicLong();
+
+  @Nullable private LocationOptions locationOptions;
+  @Nullable private Location lastLocation;
+
+  public void setLocationOptions(@Nullable LocationOptions locationOptions) {
+    this.locationOptions = locationOptions;
+
+    if (locationOptions == null) {
+      lastLocation = null;
+    }
+  }
+
+  public boolean accept(Location location) {
+    if (locationOptions == null) {
+      return true;
+    }
+
+    if (location.getAccuracy() > locationOptions.getMaxAccuracy()) {
+      inaccurateCount.incrementAndGet();
+      return false;
+    }
+
+    if (lastLocation != null) {
+      // Leave some room for delivery jitter of the hardware request.
+      long minTime = locationOptions.getFastestInterval() * 9 / 10;
+
+      if (LocationUtils.getTimeBetween(lastLocation, location) < minTime) {
+        throttledCount.incrementAndGet();
+        return false;
+      }
+
+      if (isDuplicate(lastLocation, location)) {
+        duplicateCount.incrementAndGet();
+        return false;
+      }
+    }
+
+    lastLocation = location;
+    passedCount.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Number of locations passed & dropped by each stage.
+   */
+  public WritableMap getStats() {
+    WritableMap stats = Arguments.createMap();
+
+    stats.putDouble("passed", passedCount.get());
+    stats.putDouble("inaccurate", inaccurateCount.get());
+    stats.putDouble("throttled", throttledCount.get());
+    stats.putDouble("duplicate", duplicateCount.get());
+
+    return stats;
+  }
+
+  /**
+   * Locations repeated by the provider or within dedupeDistance without an
+   * accuracy improvement are duplicates.
+   */
+  private boolean isDuplicate(Location previous, Location location) {
+    if (previous.getTime() == location.getTime() &&
+      previous.getLatitude() == location.getLatitude() &&
+      previous.getLongitude() == location.getLongitude()
+    ) {
+      return true;
+    }
+
+    float dedupeDistance = locationOptions != null ? locationOptions.getDedupeDistance() : 0;
+
+    return dedupeDistance > 0 &&
+      location.getAccuracy() >= previous.getAccuracy() &&
+      previous.distanceTo(location) < dedupeDistance;
+  }
+}
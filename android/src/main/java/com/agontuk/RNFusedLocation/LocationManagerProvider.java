@@ -7,28 +7,37 @@ import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
 import android.os.Bundle;
-import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
 
-import com.facebook.react.bridge.ReactApplicationContext;
 
 import java.util.List;
 
 public class LocationManagerProvider implements LocationProvider {
+  // Criteria are only read by LocationManager, build them once per accuracy.
+  private static final Criteria[] providerCriteria = new Criteria[LocationAccuracy.values().length];
+
+  static {
+    for (LocationAccuracy locationAccuracy: LocationAccuracy.values()) {
+      providerCriteria[locationAccuracy.ordinal()] = buildProviderCriteria(locationAccuracy);
+    }
+  }
+
   private final LocationManager locationManager;
   private final LocationChangeListener locationChangeListener;
+  private final Looper looper;
+  @Nullable private final String fixedProvider;
 
   private boolean isSingleUpdate = false;
+  private boolean isRequestActive = false;
   private final LocationListener locationListener = new LocationListener() {
     @Override
     public void onLocationChanged(Location location) {
       locationChangeListener.onLocationChange(LocationManagerProvider.this, location);
 
       if (isSingleUpdate) {
-        timeoutHandler.removeCallbacks(timeoutRunnable);
         removeLocationUpdates();
       }
     }
@@ -56,28 +65,37 @@ public class LocationManagerProvider implements LocationProvider {
       );
     }
   };
-  private final Handler timeoutHandler = new Handler(Looper.getMainLooper());
-  private final Runnable timeoutRunnable = new Runnable() {
-    @Override
-    public void run() {
-      locationChangeListener.onLocationError(
-        LocationManagerProvider.this,
-        LocationError.TIMEOUT,
-        null
-      );
-      removeLocationUpdates();
-    }
-  };
 
-  public LocationManagerProvider(ReactApplicationContext context, LocationChangeListener locationChangeListener) {
+  public LocationManagerProvider(
+    Context context,
+    LocationChangeListener locationChangeListener,
+    Looper looper
+  ) {
+    this(context, locationChangeListener, looper, null);
+  }
+
+  /**
+   * Always use the given provider instead of picking the best one for the
+   * requested accuracy.
+   */
+  public LocationManagerProvider(
+    Context context,
+    LocationChangeListener locationChangeListener,
+    Looper looper,
+    @Nullable String fixedProvider
+  ) {
     this.locationChangeListener = locationChangeListener;
     this.locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+    this.looper = looper;
+    this.fixedProvider = fixedProvider;
   }
 
   @SuppressLint("MissingPermission")
   @Override
   public void getCurrentLocation(LocationOptions locationOptions) {
-    this.isSingleUpdate = true;
+    // Keep sampling until the module gets an accurate enough location.
+    this.isSingleUpdate = !locationOptions.isSampleUntilAccepted();
+    this.isRequestActive = true;
     String provider = getBestProvider(locationOptions.getAccuracy());
 
     if (provider == null) {
@@ -91,20 +109,17 @@ public class LocationManagerProvider implements LocationProvider {
 
     Location location = locationManager.getLastKnownLocation(provider);
 
-    if (location != null &&
-      LocationUtils.getLocationAge(location) < locationOptions.getMaximumAge()
-    ) {
+    if (location != null && LocationUtils.isLastLocationUsable(location, locationOptions)) {
       Log.i(RNFusedLocationModule.TAG, "returning cached location.");
       locationChangeListener.onLocationChange(LocationManagerProvider.this, location);
-      return;
+
+      // Keep sampling unless the module accepted it and removed updates.
+      if (isSingleUpdate || !isRequestActive) {
+        return;
+      }
     }
 
-    startLocationUpdates(
-      provider,
-      locationOptions.getInterval(),
-      0,
-      locationOptions.getTimeout()
-    );
+    startLocationUpdates(provider, locationOptions.getInterval(), 0);
   }
 
   @Override
@@ -115,6 +130,7 @@ public class LocationManagerProvider implements LocationProvider {
   @Override
   public void requestLocationUpdates(LocationOptions locationOptions) {
     this.isSingleUpdate = false;
+    this.isRequestActive = true;
     String provider = getBestProvider(locationOptions.getAccuracy());
 
     if (provider == null) {
@@ -129,20 +145,24 @@ public class LocationManagerProvider implements LocationProvider {
     startLocationUpdates(
       provider,
       locationOptions.getInterval(),
-      locationOptions.getDistanceFilter(),
-      locationOptions.getTimeout()
+      locationOptions.getDistanceFilter()
     );
   }
 
   @SuppressLint("MissingPermission")
   @Override
   public void removeLocationUpdates() {
+    isRequestActive = false;
     locationManager.removeUpdates(locationListener);
   }
 
   @Nullable
   private String getBestProvider(LocationAccuracy locationAccuracy) {
-    Criteria criteria = getProviderCriteria(locationAccuracy);
+    if (fixedProvider != null) {
+      return locationManager.isProviderEnabled(fixedProvider) ? fixedProvider : null;
+    }
+
+    Criteria criteria = providerCriteria[locationAccuracy.ordinal()];
     String provider = locationManager.getBestProvider(criteria, true);
 
     if (provider == null) {
@@ -153,7 +173,7 @@ public class LocationManagerProvider implements LocationProvider {
     return provider;
   }
 
-  private Criteria getProviderCriteria(LocationAccuracy locationAccuracy) {
+  private static Criteria buildProviderCriteria(LocationAccuracy locationAccuracy) {
     int accuracy;
     int baseAccuracy;
     int power;
@@ -195,19 +215,13 @@ public class LocationManagerProvider implements LocationProvider {
   }
 
   @SuppressLint("MissingPermission")
-  private void startLocationUpdates(String provider, long minTime, float minDistance, long timeout) {
+  private void startLocationUpdates(String provider, long minTime, float minDistance) {
     locationManager.requestLocationUpdates(
       provider,
       minTime,
       minDistance,
       locationListener,
-      Looper.getMainLooper()
+      looper
     );
-
-    if (isSingleUpdate) {
-      if (timeout > 0 && timeout != Long.MAX_VALUE) {
-        timeoutHandler.postDelayed(timeoutRunnable, timeout);
-      }
-    }
   }
 }
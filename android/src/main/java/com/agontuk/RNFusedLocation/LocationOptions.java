@@ -1,48 +1,154 @@
 package com.agontuk.RNFusedLocation;
 
+import android.util.LruCache;
+
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.ReadableType;
 
+import java.util.Collection;
+import java.util.HashMap;
+
 public class LocationOptions {
   private static final float DEFAULT_DISTANCE_FILTER = 100;
   private static final long DEFAULT_INTERVAL = 10 * 1000;  /* 10 secs */
   private static final long DEFAULT_FASTEST_INTERVAL = 5 * 1000; /* 5 sec */
+  private static final int INTERN_CACHE_SIZE = 64;
+  // Apps send the same few option shapes over and over, keep one instance of each.
+  private static final LruCache<LocationOptions, LocationOptions> internedOptions =
+    new LruCache<>(INTERN_CACHE_SIZE);
+  private static final HashMap<Integer, LocationOptions> profiles = new HashMap<>();
 
   private final LocationAccuracy accuracy;
   private final long interval;
   private final long fastestInterval;
+  private final long maxWaitTime;
   private final float distanceFilter;
+  private final float maxAccuracy;
+  private final float desiredAccuracy;
+  private final float dedupeDistance;
   private final long timeout;
   private final double maximumAge;
   private final boolean showLocationDialog;
   private final boolean forceRequestLocation;
   private final boolean forceLocationManager;
+  private final boolean compactPayload;
+  private final boolean useRingBuffer;
+  private final boolean smoothing;
+  private final boolean adaptiveSampling;
+  private final boolean fastFirstFix;
+  @Nullable private final String replayTrace;
+  private final float replaySpeed;
+  private int hash = 0;
 
   private LocationOptions(
     LocationAccuracy accuracy,
     long interval,
     long fastestInterval,
+    long maxWaitTime,
     float distanceFilter,
+    float maxAccuracy,
+    float desiredAccuracy,
+    float dedupeDistance,
     long timeout,
     double maximumAge,
     boolean showLocationDialog,
     boolean forceRequestLocation,
-    boolean forceLocationManager
+    boolean forceLocationManager,
+    boolean compactPayload,
+    boolean useRingBuffer,
+    boolean smoothing,
+    boolean adaptiveSampling,
+    boolean fastFirstFix,
+    @Nullable String replayTrace,
+    float replaySpeed
   ) {
     this.accuracy = accuracy;
     this.interval = interval;
     this.fastestInterval = fastestInterval;
+    this.maxWaitTime = maxWaitTime;
     this.distanceFilter = distanceFilter;
+    this.maxAccuracy = maxAccuracy;
+    this.desiredAccuracy = desiredAccuracy;
+    this.dedupeDistance = dedupeDistance;
     this.timeout = timeout;
     this.maximumAge = maximumAge;
     this.showLocationDialog = showLocationDialog;
     this.forceRequestLocation = forceRequestLocation;
     this.forceLocationManager = forceLocationManager;
+    this.compactPayload = compactPayload;
+    this.useRingBuffer = useRingBuffer;
+    this.smoothing = smoothing;
+    this.adaptiveSampling = adaptiveSampling;
+    this.fastFirstFix = fastFirstFix;
+    this.replayTrace = replayTrace;
+    this.replaySpeed = replaySpeed;
   }
 
+  /**
+   * Parse options, or look up the profile registered with registerProfile
+   * when the map holds a profileId.
+   *
+   * @throws IllegalArgumentException when the profile isn't registered, eg.
+   *   after removeProfile or a reload.
+   */
   public static LocationOptions fromReadableMap(ReadableMap map) {
+    if (map.hasKey("profileId")) {
+      int profileId = map.getInt("profileId");
+      LocationOptions profile = getProfile(profileId);
+
+      if (profile == null) {
+        throw new IllegalArgumentException("Unknown options profile: " + profileId);
+      }
+
+      return profile;
+    }
+
+    return intern(parse(map));
+  }
+
+  public static void registerProfile(int profileId, LocationOptions locationOptions) {
+    synchronized (profiles) {
+      profiles.put(profileId, locationOptions);
+    }
+  }
+
+  public static void removeProfile(int profileId) {
+    synchronized (profiles) {
+      profiles.remove(profileId);
+    }
+  }
+
+  public static void clearProfiles() {
+    synchronized (profiles) {
+      profiles.clear();
+    }
+  }
+
+  private static LocationOptions getProfile(int profileId) {
+    synchronized (profiles) {
+      return profiles.get(profileId);
+    }
+  }
+
+  /**
+   * Canonical instance of options equal to the given ones, so repeated
+   * requests share their cached LocationRequest and compare by identity.
+   */
+  public static LocationOptions intern(LocationOptions locationOptions) {
+    LocationOptions interned = internedOptions.get(locationOptions);
+
+    if (interned != null) {
+      return interned;
+    }
+
+    internedOptions.put(locationOptions, locationOptions);
+    return locationOptions;
+  }
+
+  private static LocationOptions parse(ReadableMap map) {
     LocationAccuracy accuracy = getAccuracy(map);
     long interval = map.hasKey("interval")
       ? (long) map.getDouble("interval")
@@ -50,9 +156,21 @@ public class LocationOptions {
     long fastestInterval = map.hasKey("fastestInterval")
       ? (long) map.getDouble("fastestInterval")
       : DEFAULT_FASTEST_INTERVAL;
+    long maxWaitTime = map.hasKey("maxWaitTime")
+      ? (long) map.getDouble("maxWaitTime")
+      : 0;
     float distanceFilter = map.hasKey("distanceFilter")
       ? (float) map.getDouble("distanceFilter")
       : DEFAULT_DISTANCE_FILTER;
+    float maxAccuracy = map.hasKey("maxAccuracy")
+      ? (float) map.getDouble("maxAccuracy")
+      : Float.MAX_VALUE;
+    float desiredAccuracy = map.hasKey("desiredAccuracy")
+      ? (float) map.getDouble("desiredAccuracy")
+      : 0;
+    float dedupeDistance = map.hasKey("dedupeDistance")
+      ? (float) map.getDouble("dedupeDistance")
+      : 0;
     long timeout = map.hasKey("timeout")
       ? (long) map.getDouble("timeout")
       : Long.MAX_VALUE;
@@ -65,20 +183,145 @@ public class LocationOptions {
       map.hasKey("forceRequestLocation") && map.getBoolean("forceRequestLocation");
     boolean forceLocationManager =
       map.hasKey("forceLocationManager") && map.getBoolean("forceLocationManager");
+    boolean compactPayload =
+      map.hasKey("compactPayload") && map.getBoolean("compactPayload");
+    boolean useRingBuffer =
+      map.hasKey("useRingBuffer") && map.getBoolean("useRingBuffer");
+    boolean smoothing =
+      map.hasKey("smoothing") && map.getBoolean("smoothing");
+    boolean adaptiveSampling =
+      map.hasKey("adaptiveSampling") && map.getBoolean("adaptiveSampling");
+    boolean fastFirstFix =
+      map.hasKey("fastFirstFix") && map.getBoolean("fastFirstFix");
+    String replayTrace = map.hasKey("replayTrace") ? map.getString("replayTrace") : null;
+    float replaySpeed = map.hasKey("replaySpeed")
+      ? (float) map.getDouble("replaySpeed")
+      : 1;
 
     return new LocationOptions(
       accuracy,
       interval,
       fastestInterval,
+      maxWaitTime,
       distanceFilter,
+      maxAccuracy,
+      desiredAccuracy,
+      dedupeDistance,
       timeout,
       maximumAge,
       showLocationDialog,
       forceRequestLocation,
-      forceLocationManager
+      forceLocationManager,
+      compactPayload,
+      useRingBuffer,
+      smoothing,
+      adaptiveSampling,
+      fastFirstFix,
+      replayTrace,
+      replaySpeed
+    );
+  }
+
+  /**
+   * Combine options of multiple watchers into a single hardware request, which
+   * satisfies the most demanding of them. Smoothing & payload format are left
+   * out, they're applied to each watcher on its own.
+   */
+  public static LocationOptions combine(Collection<LocationOptions> optionsList) {
+    LocationAccuracy accuracy = LocationAccuracy.passive;
+    long interval = Long.MAX_VALUE;
+    long fastestInterval = Long.MAX_VALUE;
+    long maxWaitTime = Long.MAX_VALUE;
+    float distanceFilter = Float.MAX_VALUE;
+    float maxAccuracy = 0;
+    float dedupeDistance = Float.MAX_VALUE;
+    boolean showLocationDialog = false;
+    boolean forceRequestLocation = false;
+    boolean forceLocationManager = true;
+    boolean useRingBuffer = false;
+    boolean adaptiveSampling = true;
+    boolean fastFirstFix = false;
+    String replayTrace = null;
+    float replaySpeed = 1;
+
+    for (LocationOptions options: optionsList) {
+      if (options.accuracy.ordinal() < accuracy.ordinal()) {
+        accuracy = options.accuracy;
+      }
+
+      interval = Math.min(interval, options.interval);
+      fastestInterval = Math.min(fastestInterval, options.fastestInterval);
+      maxWaitTime = Math.min(maxWaitTime, options.maxWaitTime);
+      distanceFilter = Math.min(distanceFilter, options.distanceFilter);
+      maxAccuracy = Math.max(maxAccuracy, options.maxAccuracy);
+      dedupeDistance = Math.min(dedupeDistance, options.dedupeDistance);
+      showLocationDialog |= options.showLocationDialog;
+      forceRequestLocation |= options.forceRequestLocation;
+      forceLocationManager &= options.forceLocationManager;
+      useRingBuffer |= options.useRingBuffer;
+      adaptiveSampling &= options.adaptiveSampling;
+      fastFirstFix |= options.fastFirstFix;
+
+      // Replay the first trace, real and replayed locations can't be mixed.
+      if (replayTrace == null && options.replayTrace != null) {
+        replayTrace = options.replayTrace;
+        replaySpeed = options.replaySpeed;
+      }
+    }
+
+    return new LocationOptions(
+      accuracy,
+      interval,
+      fastestInterval,
+      maxWaitTime,
+      distanceFilter,
+      maxAccuracy,
+      0,
+      dedupeDistance,
+      Long.MAX_VALUE,
+      Double.POSITIVE_INFINITY,
+      showLocationDialog,
+      forceRequestLocation,
+      forceLocationManager,
+      false,
+      useRingBuffer,
+      false,
+      adaptiveSampling,
+      fastFirstFix,
+      replayTrace,
+      replaySpeed
     );
   }
 
+  /**
+   * Copy of these options with a different update rate & accuracy, used to
+   * re-issue an adaptive request.
+   */
+  public LocationOptions withSampling(LocationAccuracy accuracy, long interval, long fastestInterval) {
+    return intern(new LocationOptions(
+      accuracy,
+      interval,
+      fastestInterval,
+      maxWaitTime,
+      distanceFilter,
+      maxAccuracy,
+      desiredAccuracy,
+      dedupeDistance,
+      timeout,
+      maximumAge,
+      showLocationDialog,
+      forceRequestLocation,
+      forceLocationManager,
+      compactPayload,
+      useRingBuffer,
+      smoothing,
+      adaptiveSampling,
+      fastFirstFix,
+      replayTrace,
+      replaySpeed
+    ));
+  }
+
   public LocationAccuracy getAccuracy() {
     return accuracy;
   }
@@ -91,10 +334,26 @@ public class LocationOptions {
     return fastestInterval;
   }
 
+  public long getMaxWaitTime() {
+    return maxWaitTime;
+  }
+
   public float getDistanceFilter() {
     return distanceFilter;
   }
 
+  public float getMaxAccuracy() {
+    return maxAccuracy;
+  }
+
+  public float getDesiredAccuracy() {
+    return desiredAccuracy;
+  }
+
+  public float getDedupeDistance() {
+    return dedupeDistance;
+  }
+
   public long getTimeout() {
     return timeout;
   }
@@ -115,6 +374,109 @@ public class LocationOptions {
     return forceLocationManager;
   }
 
+  public boolean isCompactPayload() {
+    return compactPayload;
+  }
+
+  public boolean isUseRingBuffer() {
+    return useRingBuffer;
+  }
+
+  public boolean isSmoothing() {
+    return smoothing;
+  }
+
+  public boolean isAdaptiveSampling() {
+    return adaptiveSampling;
+  }
+
+  public boolean isFastFirstFix() {
+    return fastFirstFix;
+  }
+
+  /**
+   * Whether single requests keep sampling until the module accepts a fix or
+   * the deadline passes, instead of stopping after the first one.
+   */
+  public boolean isSampleUntilAccepted() {
+    return desiredAccuracy > 0 || fastFirstFix;
+  }
+
+  @Nullable
+  public String getReplayTrace() {
+    return replayTrace;
+  }
+
+  public float getReplaySpeed() {
+    return replaySpeed;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    LocationOptions that = (LocationOptions) o;
+
+    return accuracy == that.accuracy &&
+      interval == that.interval &&
+      fastestInterval == that.fastestInterval &&
+      maxWaitTime == that.maxWaitTime &&
+      Float.compare(that.distanceFilter, distanceFilter) == 0 &&
+      Float.compare(that.maxAccuracy, maxAccuracy) == 0 &&
+      Float.compare(that.desiredAccuracy, desiredAccuracy) == 0 &&
+      Float.compare(that.dedupeDistance, dedupeDistance) == 0 &&
+      timeout == that.timeout &&
+      Double.compare(that.maximumAge, maximumAge) == 0 &&
+      showLocationDialog == that.showLocationDialog &&
+      forceRequestLocation == that.forceRequestLocation &&
+      forceLocationManager == that.forceLocationManager &&
+      compactPayload == that.compactPayload &&
+      useRingBuffer == that.useRingBuffer &&
+      smoothing == that.smoothing &&
+      adaptiveSampling == that.adaptiveSampling &&
+      fastFirstFix == that.fastFirstFix &&
+      (replayTrace == null ? that.replayTrace == null : replayTrace.equals(that.replayTrace)) &&
+      Float.compare(that.replaySpeed, replaySpeed) == 0;
+  }
+
+  @Override
+  public int hashCode() {
+    // Immutable, computed once. A collision with 0 only costs a recomputation.
+    if (hash != 0) {
+      return hash;
+    }
+
+    int result = accuracy.hashCode();
+    result = 31 * result + (int) (interval ^ (interval >>> 32));
+    result = 31 * result + (int) (fastestInterval ^ (fastestInterval >>> 32));
+    result = 31 * result + (int) (maxWaitTime ^ (maxWaitTime >>> 32));
+    result = 31 * result + Float.floatToIntBits(distanceFilter);
+    result = 31 * result + Float.floatToIntBits(maxAccuracy);
+    result = 31 * result + Float.floatToIntBits(desiredAccuracy);
+    result = 31 * result + Float.floatToIntBits(dedupeDistance);
+    result = 31 * result + (int) (timeout ^ (timeout >>> 32));
+    long maximumAgeBits = Double.doubleToLongBits(maximumAge);
+    result = 31 * result + (int) (maximumAgeBits ^ (maximumAgeBits >>> 32));
+    result = 31 * result + (showLocationDialog ? 1 : 0);
+    result = 31 * result + (forceRequestLocation ? 1 : 0);
+    result = 31 * result + (forceLocationManager ? 1 : 0);
+    result = 31 * result + (compactPayload ? 1 : 0);
+    result = 31 * result + (useRingBuffer ? 1 : 0);
+    result = 31 * result + (smoothing ? 1 : 0);
+    result = 31 * result + (adaptiveSampling ? 1 : 0);
+    result = 31 * result + (fastFirstFix ? 1 : 0);
+    result = 31 * result + (replayTrace != null ? replayTrace.hashCode() : 0);
+    result = 31 * result + Float.floatToIntBits(replaySpeed);
+    hash = result;
+    return result;
+  }
+
   /**
    * Determine location priority from user provided accuracy level
    */
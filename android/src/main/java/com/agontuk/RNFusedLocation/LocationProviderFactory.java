@@ -0,0 +1,18 @@
+package com.agontuk.RNFusedLocation;
+
+import android.content.Context;
+import android.os.Looper;
+
+/**
+ * Creates the provider serving the given options, tests replace it with
+ * fakes.
+ */
+public interface LocationProviderFactory {
+  LocationProvider create(
+    Context context,
+    LocationChangeListener locationChangeListener,
+    LocationSettingsCache locationSettingsCache,
+    Looper looper,
+    LocationOptions locationOptions
+  );
+}
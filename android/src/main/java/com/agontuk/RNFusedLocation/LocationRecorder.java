@@ -0,0 +1,344 @@
+package com.agontuk.RNFusedLocation;
+
+import android.content.Context;
+import android.location.Location;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+/**
+ * Appends continuous updates to memory mapped segment files of fixed size
+ * records, so a track survives JS reloads and doesn't need to be kept in
+ * memory. Not thread safe, must be used from a single thread.
+ *
+ * Segment layout: [magic, record count] header followed by records of
+ * [latitude, longitude, altitude, time, accuracy, heading, speed,
+ *  altitudeAccuracy, provider, mocked]
+ */
+public class LocationRecorder {
+  private static final String DIRECTORY_NAME = "RNFusedLocation/track";
+  private static final int MAGIC = 0x524e464c; /* RNFL */
+  private static final int HEADER_SIZE = 8;
+  private static final int RECORD_SIZE = 56;
+  private static final int SEGMENT_CAPACITY = 8192;
+  private static final int SEGMENT_SIZE = HEADER_SIZE + RECORD_SIZE * SEGMENT_CAPACITY;
+
+  private final File directory;
+
+  @Nullable private RandomAccessFile segmentFile;
+  @Nullable private MappedByteBuffer segment;
+  private int segmentIndex;
+  private int recordCount;
+
+  public LocationRecorder(Context context) {
+    this(context, DIRECTORY_NAME);
+  }
+
+  public LocationRecorder(Context context, String directoryName) {
+    this.directory = new File(context.getFilesDir(), directoryName);
+  }
+
+  public boolean isRecording() {
+    return segment != null;
+  }
+
+  /**
+   * Start appending to the last segment, existing records are kept.
+   */
+  public void start() throws IOException {
+    if (isRecording()) {
+      return;
+    }
+
+    if (!directory.exists() && !directory.mkdirs()) {
+      throw new IOException("Unable to create track directory.");
+    }
+
+    openSegment(Math.max(getSegmentCount() - 1, 0));
+  }
+
+  /**
+   * Append a location, only allocates when rotating to a new segment.
+   */
+  public void append(Location location) {
+    if (segment == null) {
+      return;
+    }
+
+    if (recordCount == SEGMENT_CAPACITY) {
+      try {
+        openSegment(segmentIndex + 1);
+      } catch (IOException e) {
+        Log.e(RNFusedLocationModule.TAG, "Unable to rotate track segment.", e);
+        stop();
+        return;
+      }
+    }
+
+    int offset = HEADER_SIZE + recordCount * RECORD_SIZE;
+
+    segment.putDouble(offset, location.getLatitude());
+    segment.putDouble(offset + 8, location.getLongitude());
+    segment.putDouble(offset + 16, location.getAltitude());
+    segment.putLong(offset + 24, location.getTime());
+    segment.putFloat(offset + 32, location.getAccuracy());
+    segment.putFloat(offset + 36, location.getBearing());
+    segment.putFloat(offset + 40, location.getSpeed());
+    segment.putFloat(offset + 44, Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+      ? location.getVerticalAccuracyMeters()
+      : Float.NaN);
+    segment.put(offset + 48, (byte) LocationUtils.getProviderCode(location.getProvider()));
+    segment.put(offset + 49, (byte) (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2
+      ? (location.isFromMockProvider() ? 1 : 0)
+      : -1));
+
+    // Publish the record only after it's fully written.
+    recordCount++;
+    segment.putInt(4, recordCount);
+  }
+
+  /**
+   * Write mapped pages to disk.
+   */
+  public void flush() {
+    if (segment != null) {
+      segment.force();
+    }
+  }
+
+  public void stop() {
+    flush();
+    closeSegment();
+  }
+
+  /**
+   * Total number of recorded locations.
+   */
+  public long getSize() throws IOException {
+    int segmentCount = getSegmentCount();
+
+    if (segmentCount == 0) {
+      return 0;
+    }
+
+    int lastIndex = segmentCount - 1;
+    return (long) lastIndex * SEGMENT_CAPACITY + readRecordCount(lastIndex);
+  }
+
+  /**
+   * Read a page of recorded locations as compact locations, along with the
+   * offset of the next page and the total size.
+   */
+  public WritableMap read(long offset, int limit) throws IOException {
+    long size = getSize();
+    long start = Math.max(offset, 0);
+    long end = Math.min(size, offset + limit);
+
+    WritableMap result = Arguments.createMap();
+    result.putArray("locations", readLocations(start, end));
+    result.putDouble("nextOffset", Math.max(start, end));
+    result.putDouble("size", size);
+
+    return result;
+  }
+
+  /**
+   * Read all recorded locations as compact locations.
+   */
+  public WritableArray readAll() throws IOException {
+    return readLocations(0, getSize());
+  }
+
+  /**
+   * Read recorded locations in [start, end) as compact locations.
+   */
+  public WritableArray readLocations(long start, long end) throws IOException {
+    WritableArray locations = Arguments.createArray();
+    long position = start;
+
+    while (position < end) {
+      int index = (int) (position / SEGMENT_CAPACITY);
+      int record = (int) (position % SEGMENT_CAPACITY);
+      int count = (int) Math.min(end - position, SEGMENT_CAPACITY - record);
+      MappedByteBuffer buffer = index == segmentIndex && segment != null
+        ? segment
+        : mapSegment(index);
+
+      for (int i = 0; i < count; i++) {
+        locations.pushArray(readRecord(buffer, HEADER_SIZE + (record + i) * RECORD_SIZE));
+      }
+
+      position += count;
+    }
+
+    return locations;
+  }
+
+  /**
+   * Read all recorded positions as a flat [lat, lng, lat, lng, ...] array.
+   */
+  public double[] readCoordinates() throws IOException {
+    long size = getSize();
+
+    if (size > Integer.MAX_VALUE / 2) {
+      throw new IOException("Recorded track is too large.");
+    }
+
+    double[] coordinates = new double[(int) size * 2];
+    int segmentCount = (int) ((size + SEGMENT_CAPACITY - 1) / SEGMENT_CAPACITY);
+    int offset = 0;
+
+    for (int index = 0; index < segmentCount; index++) {
+      MappedByteBuffer buffer = index == segmentIndex && segment != null
+        ? segment
+        : mapSegment(index);
+      int count = (int) Math.min(size - (long) index * SEGMENT_CAPACITY, SEGMENT_CAPACITY);
+
+      for (int i = 0; i < count; i++) {
+        int position = HEADER_SIZE + i * RECORD_SIZE;
+        coordinates[offset++] = buffer.getDouble(position);
+        coordinates[offset++] = buffer.getDouble(position + 8);
+      }
+    }
+
+    return coordinates;
+  }
+
+  /**
+   * Delete all recorded locations. Recording continues in a new track if it
+   * was active.
+   */
+  public void clear() throws IOException {
+    boolean wasRecording = isRecording();
+    closeSegment();
+
+    File[] files = directory.listFiles();
+
+    if (files != null) {
+      for (File file: files) {
+        if (!file.delete()) {
+          Log.w(RNFusedLocationModule.TAG, "Unable to delete " + file.getName());
+        }
+      }
+    }
+
+    if (wasRecording) {
+      start();
+    }
+  }
+
+  private void openSegment(int index) throws IOException {
+    closeSegment();
+
+    File file = getSegmentFile(index);
+    boolean isNew = !file.exists();
+
+    segmentFile = new RandomAccessFile(file, "rw");
+    segment = segmentFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+    segmentIndex = index;
+
+    if (isNew || segment.getInt(0) != MAGIC) {
+      segment.putInt(0, MAGIC);
+      segment.putInt(4, 0);
+    }
+
+    recordCount = segment.getInt(4);
+  }
+
+  private void closeSegment() {
+    segment = null;
+    recordCount = 0;
+
+    if (segmentFile != null) {
+      try {
+        segmentFile.close();
+      } catch (IOException e) {
+        Log.w(RNFusedLocationModule.TAG, "Unable to close track segment.", e);
+      }
+
+      segmentFile = null;
+    }
+  }
+
+  private MappedByteBuffer mapSegment(int index) throws IOException {
+    RandomAccessFile file = new RandomAccessFile(getSegmentFile(index), "r");
+
+    try {
+      return file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, SEGMENT_SIZE);
+    } finally {
+      file.close();
+    }
+  }
+
+  private int readRecordCount(int index) throws IOException {
+    if (index == segmentIndex && segment != null) {
+      return recordCount;
+    }
+
+    MappedByteBuffer buffer = mapSegment(index);
+    return buffer.getInt(0) == MAGIC ? buffer.getInt(4) : 0;
+  }
+
+  private int getSegmentCount() {
+    int count = 0;
+
+    while (getSegmentFile(count).exists()) {
+      count++;
+    }
+
+    return count;
+  }
+
+  private File getSegmentFile(int index) {
+    return new File(directory, String.format(Locale.US, "segment-%05d.bin", index));
+  }
+
+  private static WritableArray readRecord(MappedByteBuffer buffer, int offset) {
+    WritableArray location = Arguments.createArray();
+    float altitudeAccuracy = buffer.getFloat(offset + 44);
+    byte provider = buffer.get(offset + 48);
+    byte mocked = buffer.get(offset + 49);
+
+    // Same field order as LocationUtils.locationToArray
+    location.pushDouble(buffer.getDouble(offset));
+    location.pushDouble(buffer.getDouble(offset + 8));
+    location.pushDouble(buffer.getDouble(offset + 16));
+    location.pushDouble(buffer.getFloat(offset + 32));
+    location.pushDouble(buffer.getFloat(offset + 36));
+    location.pushDouble(buffer.getFloat(offset + 40));
+
+    if (Float.isNaN(altitudeAccuracy)) {
+      location.pushNull();
+    } else {
+      location.pushDouble(altitudeAccuracy);
+    }
+
+    location.pushDouble(buffer.getLong(offset + 24));
+
+    if (provider >= 0) {
+      location.pushInt(provider);
+    } else {
+      location.pushNull();
+    }
+
+    if (mocked >= 0) {
+      location.pushInt(mocked);
+    } else {
+      location.pushNull();
+    }
+
+    return location;
+  }
+}
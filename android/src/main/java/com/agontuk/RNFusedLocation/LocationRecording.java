@@ -0,0 +1,195 @@
+package com.agontuk.RNFusedLocation;
+
+import android.content.Context;
+import android.location.Location;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Promise;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Process wide track recording with its own provider & thread, so recording
+ * keeps running while the React instance is torn down and reloaded. Uses the
+ * application context, the location settings dialog is never shown for it.
+ */
+public class LocationRecording implements LocationChangeListener {
+  private static final String THREAD_NAME = RNFusedLocationModule.TAG + ".recording";
+
+  @Nullable private static LocationRecording instance;
+
+  private final Context context;
+  private final Handler handler;
+  private final LocationRecorder locationRecorder;
+  // Never registered, a single long running request doesn't repeat settings checks.
+  private final LocationSettingsCache locationSettingsCache;
+
+  // Read by the module's diagnostics from its own thread.
+  @Nullable private volatile LocationProvider locationProvider;
+  @Nullable private LocationOptions locationOptions;
+
+  private LocationRecording(Context context) {
+    HandlerThread thread = new HandlerThread(THREAD_NAME);
+    thread.start();
+
+    this.context = context;
+    this.handler = new Handler(thread.getLooper());
+    this.locationRecorder = new LocationRecorder(context);
+    this.locationSettingsCache = new LocationSettingsCache(context, new LocationDiagnostics());
+  }
+
+  public static synchronized LocationRecording getInstance(Context context) {
+    if (instance == null) {
+      instance = new LocationRecording(context.getApplicationContext());
+    }
+
+    return instance;
+  }
+
+  /**
+   * Whether a recording provider is running, without starting the recording
+   * thread if nothing was recorded yet.
+   */
+  public static synchronized boolean isRecording() {
+    return instance != null && instance.locationProvider != null;
+  }
+
+  @Override
+  public void onLocationChange(LocationProvider locationProvider, Location location) {
+    if (locationProvider == this.locationProvider) {
+      locationRecorder.append(location);
+    }
+  }
+
+  @Override
+  public void onLocationBatch(LocationProvider locationProvider, List<Location> locations) {
+    if (locationProvider != this.locationProvider) {
+      return;
+    }
+
+    for (Location location: locations) {
+      locationRecorder.append(location);
+    }
+  }
+
+  @Override
+  public void onLocationError(LocationProvider locationProvider, LocationError error, @Nullable String message) {
+    // JS may not be around to receive it, recording continues once the provider recovers.
+    Log.w(RNFusedLocationModule.TAG, "recording location error: " + error + " " + message);
+  }
+
+  /**
+   * Start recording, or switch a running recording to the given options.
+   */
+  public void start(final LocationOptions locationOptions, final Promise promise) {
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          locationRecorder.start();
+        } catch (IOException e) {
+          reject(promise, e);
+          return;
+        }
+
+        if (!locationOptions.equals(LocationRecording.this.locationOptions)) {
+          stopProvider();
+          LocationRecording.this.locationOptions = locationOptions;
+          locationProvider = RNFusedLocationModule.createLocationProvider(
+            context,
+            LocationRecording.this,
+            locationSettingsCache,
+            handler.getLooper(),
+            locationOptions
+          );
+          locationProvider.requestLocationUpdates(locationOptions);
+        }
+
+        promise.resolve(null);
+      }
+    });
+  }
+
+  public void stop(final Promise promise) {
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        stopProvider();
+        locationRecorder.stop();
+        promise.resolve(null);
+      }
+    });
+  }
+
+  public void flush(final Promise promise) {
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        locationRecorder.flush();
+        promise.resolve(null);
+      }
+    });
+  }
+
+  public void read(final long offset, final int limit, final Promise promise) {
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          promise.resolve(locationRecorder.read(offset, limit));
+        } catch (IOException e) {
+          reject(promise, e);
+        }
+      }
+    });
+  }
+
+  public void clear(final Promise promise) {
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          locationRecorder.clear();
+          promise.resolve(null);
+        } catch (IOException e) {
+          reject(promise, e);
+        }
+      }
+    });
+  }
+
+  /**
+   * Simplify the recorded track without sending the raw locations to JS.
+   */
+  public void simplify(final double tolerance, final String format, final Promise promise) {
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          double[] coordinates = locationRecorder.readCoordinates();
+          promise.resolve(TrackSimplifier.toOutput(TrackSimplifier.simplify(coordinates, tolerance), format));
+        } catch (IOException e) {
+          reject(promise, e);
+        }
+      }
+    });
+  }
+
+  private void stopProvider() {
+    if (locationProvider != null) {
+      locationProvider.removeLocationUpdates();
+      locationProvider = null;
+    }
+
+    locationOptions = null;
+  }
+
+  private static void reject(Promise promise, IOException e) {
+    promise.reject(String.valueOf(LocationError.INTERNAL_ERROR.getValue()), e.getMessage());
+  }
+}
@@ -0,0 +1,99 @@
+package com.agontuk.RNFusedLocation;
+
+import android.location.Location;
+import android.os.Build;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+
+/**
+ * Fixed size ring of locations stored as primitive doubles. Locations are
+ * written from the location callback without allocation and read by JS in
+ * bulk using sequence numbers, instead of sending one event per location.
+ */
+public class LocationRingBuffer {
+  public static final int MAX_WATCH_IDS = 8;
+  private static final int RECORD_SIZE = LocationUtils.COMPACT_LOCATION_SIZE + 1 + MAX_WATCH_IDS;
+
+  private final int capacity;
+  private final double[] records;
+  private long nextSequence = 0;
+
+  public LocationRingBuffer(int capacity) {
+    this.capacity = capacity;
+    this.records = new double[capacity * RECORD_SIZE];
+  }
+
+  /**
+   * Append a location along with the watch ids it should be delivered to.
+   * Returns false if it can't be stored, in which case the caller should
+   * fall back to a regular event.
+   */
+  public synchronized boolean write(Location location, int[] watchIds, int watchIdCount) {
+    if (watchIdCount > MAX_WATCH_IDS) {
+      return false;
+    }
+
+    int offset = (int) (nextSequence % capacity) * RECORD_SIZE;
+
+    records[offset] = location.getLatitude();
+    records[offset + 1] = location.getLongitude();
+    records[offset + 2] = location.getAltitude();
+    records[offset + 3] = location.getAccuracy();
+    records[offset + 4] = location.getBearing();
+    records[offset + 5] = location.getSpeed();
+    records[offset + 6] = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+      ? location.getVerticalAccuracyMeters()
+      : Double.NaN;
+    records[offset + 7] = location.getTime();
+    records[offset + 8] = LocationUtils.getProviderCode(location.getProvider());
+    records[offset + 9] = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2
+      ? (location.isFromMockProvider() ? 1 : 0)
+      : Double.NaN;
+    records[offset + 10] = watchIdCount;
+
+    for (int i = 0; i < watchIdCount; i++) {
+      records[offset + 11 + i] = watchIds[i];
+    }
+
+    nextSequence++;
+    return true;
+  }
+
+  /**
+   * Read all locations written since the given sequence as compact locations
+   * followed by their watch ids. The first element is the sequence to read
+   * from next time. Locations which were already overwritten are skipped.
+   */
+  public synchronized WritableArray read(long fromSequence) {
+    WritableArray result = Arguments.createArray();
+    long sequence = Math.max(fromSequence, nextSequence - capacity);
+
+    result.pushDouble(nextSequence);
+
+    for (; sequence < nextSequence; sequence++) {
+      int offset = (int) (sequence % capacity) * RECORD_SIZE;
+      WritableArray location = Arguments.createArray();
+
+      for (int i = 0; i < LocationUtils.COMPACT_LOCATION_SIZE; i++) {
+        double value = records[offset + i];
+
+        if (Double.isNaN(value)) {
+          location.pushNull();
+        } else {
+          location.pushDouble(value);
+        }
+      }
+
+      int watchIdCount = (int) records[offset + 10];
+
+      for (int i = 0; i < watchIdCount; i++) {
+        location.pushInt((int) records[offset + 11 + i]);
+      }
+
+      result.pushArray(location);
+    }
+
+    return result;
+  }
+}
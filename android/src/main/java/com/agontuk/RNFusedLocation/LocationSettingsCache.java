@@ -0,0 +1,120 @@
+package com.agontuk.RNFusedLocation;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.location.LocationManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers which location request priorities passed the settings check, so
+ * repeated requests can skip the Play Services round trip. Cleared whenever
+ * location providers or airplane mode change.
+ */
+public class LocationSettingsCache {
+  private static final long MAX_AGE = 5 * 60 * 1000; /* 5 mins */
+
+  private final Context context;
+  private final LocationDiagnostics diagnostics;
+  private final HashMap<Integer, Long> satisfiedPriorities = new HashMap<>();
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final BroadcastReceiver receiver = new BroadcastReceiver() {
+    @Override
+    public void onReceive(Context context, Intent intent) {
+      Log.d(RNFusedLocationModule.TAG, "location settings changed: " + intent.getAction());
+      invalidate();
+    }
+  };
+
+  private boolean isRegistered = false;
+  private int generation = 0;
+
+  public LocationSettingsCache(Context context, LocationDiagnostics diagnostics) {
+    this.context = context.getApplicationContext();
+    this.diagnostics = diagnostics;
+  }
+
+  public synchronized void register() {
+    if (isRegistered) {
+      return;
+    }
+
+    IntentFilter filter = new IntentFilter(LocationManager.PROVIDERS_CHANGED_ACTION);
+    filter.addAction(Intent.ACTION_AIRPLANE_MODE_CHANGED);
+    context.registerReceiver(receiver, filter);
+    isRegistered = true;
+  }
+
+  public synchronized void unregister() {
+    if (!isRegistered) {
+      return;
+    }
+
+    context.unregisterReceiver(receiver);
+    isRegistered = false;
+    invalidate();
+  }
+
+  public boolean isSatisfied(int priority) {
+    Long time;
+
+    synchronized (this) {
+      time = satisfiedPriorities.get(priority);
+    }
+
+    if (time == null || SystemClock.elapsedRealtime() - time > MAX_AGE) {
+      missCount.incrementAndGet();
+      return false;
+    }
+
+    hitCount.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Token identifying the current settings state, pass it to setSatisfied so
+   * a check which was running while settings changed isn't cached.
+   */
+  public synchronized int getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Record a successful settings check which was started at startTime.
+   */
+  public synchronized void setSatisfied(int priority, int checkGeneration, long startTime) {
+    long now = SystemClock.elapsedRealtime();
+
+    diagnostics.recordSettingsCheck(now - startTime);
+
+    if (checkGeneration == generation && isRegistered) {
+      satisfiedPriorities.put(priority, now);
+    }
+  }
+
+  /**
+   * Record a failed settings check, those are never cached.
+   */
+  public void setUnsatisfied(long startTime) {
+    diagnostics.recordSettingsCheck(SystemClock.elapsedRealtime() - startTime);
+  }
+
+  public synchronized void invalidate() {
+    generation++;
+    satisfiedPriorities.clear();
+  }
+
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  public long getMissCount() {
+    return missCount.get();
+  }
+}
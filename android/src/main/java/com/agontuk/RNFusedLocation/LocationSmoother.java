@@ -0,0 +1,145 @@
+package com.agontuk.RNFusedLocation;
+
+import android.location.Location;
+import android.os.Build;
+
+/**
+ * Constant velocity Kalman filter for continuous updates. Positions are
+ * tracked in meters on a local plane around the first location, east & north
+ * axes are filtered independently. All state is kept in primitives so
+ * smoothing a location doesn't allocate.
+ */
+public class LocationSmoother {
+  private static final double METERS_PER_DEGREE = 111319.49;
+  private static final double ACCELERATION_VARIANCE = 1.0; /* (m/s^2)^2 */
+  private static final double DEFAULT_SPEED_VARIANCE = 1.0; /* (m/s)^2 */
+  private static final double UNKNOWN_SPEED_VARIANCE = 100.0; /* (m/s)^2 */
+  private static final long RESET_INTERVAL = 60 * 1000; /* 60 secs */
+
+  private final Axis east = new Axis();
+  private final Axis north = new Axis();
+
+  private boolean isInitialized = false;
+  private double originLatitude;
+  private double originLongitude;
+  private double metersPerDegreeLongitude;
+  private long lastTime;
+
+  public void reset() {
+    isInitialized = false;
+  }
+
+  /**
+   * Smooth the location and write the result into output. Accuracy of the
+   * output is the estimated uncertainty of the filtered position.
+   */
+  public void smooth(Location location, Location output) {
+    long time = LocationUtils.getElapsedTime(location);
+    double accuracy = Math.max(location.getAccuracy(), 1);
+    double positionVariance = accuracy * accuracy;
+    boolean hasVelocity = location.hasSpeed() && location.hasBearing();
+    double bearing = Math.toRadians(location.getBearing());
+    double velocityEast = hasVelocity ? location.getSpeed() * Math.sin(bearing) : 0;
+    double velocityNorth = hasVelocity ? location.getSpeed() * Math.cos(bearing) : 0;
+    double velocityVariance = hasVelocity ? getSpeedVariance(location) : UNKNOWN_SPEED_VARIANCE;
+
+    if (!isInitialized || time < lastTime || time - lastTime > RESET_INTERVAL) {
+      isInitialized = true;
+      originLatitude = location.getLatitude();
+      originLongitude = location.getLongitude();
+      metersPerDegreeLongitude = METERS_PER_DEGREE * Math.cos(Math.toRadians(originLatitude));
+      east.reset(0, velocityEast, positionVariance, velocityVariance);
+      north.reset(0, velocityNorth, positionVariance, velocityVariance);
+    } else {
+      double dt = (time - lastTime) / 1000.0;
+
+      east.predict(dt);
+      north.predict(dt);
+      east.updatePosition((location.getLongitude() - originLongitude) * metersPerDegreeLongitude, positionVariance);
+      north.updatePosition((location.getLatitude() - originLatitude) * METERS_PER_DEGREE, positionVariance);
+
+      if (hasVelocity) {
+        east.updateVelocity(velocityEast, velocityVariance);
+        north.updateVelocity(velocityNorth, velocityVariance);
+      }
+    }
+
+    lastTime = time;
+
+    output.set(location);
+    output.setLatitude(originLatitude + north.position / METERS_PER_DEGREE);
+    output.setLongitude(originLongitude + east.position / metersPerDegreeLongitude);
+    output.setAccuracy((float) Math.sqrt(Math.max(east.p00, north.p00)));
+
+    double speed = Math.hypot(east.velocity, north.velocity);
+    output.setSpeed((float) speed);
+
+    if (speed > 0.1) {
+      double heading = Math.toDegrees(Math.atan2(east.velocity, north.velocity));
+      output.setBearing((float) (heading < 0 ? heading + 360 : heading));
+    }
+  }
+
+  private static double getSpeedVariance(Location location) {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && location.hasSpeedAccuracy()) {
+      double speedAccuracy = location.getSpeedAccuracyMetersPerSecond();
+      return Math.max(speedAccuracy * speedAccuracy, 0.01);
+    }
+
+    return DEFAULT_SPEED_VARIANCE;
+  }
+
+  /**
+   * Position & velocity along a single axis with its 2x2 covariance.
+   */
+  private static class Axis {
+    double position;
+    double velocity;
+    double p00;
+    double p01;
+    double p11;
+
+    void reset(double position, double velocity, double positionVariance, double velocityVariance) {
+      this.position = position;
+      this.velocity = velocity;
+      this.p00 = positionVariance;
+      this.p01 = 0;
+      this.p11 = velocityVariance;
+    }
+
+    void predict(double dt) {
+      double dt2 = dt * dt;
+
+      position += velocity * dt;
+      p00 += 2 * dt * p01 + dt2 * p11 + ACCELERATION_VARIANCE * dt2 * dt2 / 4;
+      p01 += dt * p11 + ACCELERATION_VARIANCE * dt2 * dt / 2;
+      p11 += ACCELERATION_VARIANCE * dt2;
+    }
+
+    void updatePosition(double measurement, double variance) {
+      double s = p00 + variance;
+      double k0 = p00 / s;
+      double k1 = p01 / s;
+      double residual = measurement - position;
+
+      position += k0 * residual;
+      velocity += k1 * residual;
+      p11 -= k1 * p01;
+      p01 -= k0 * p01;
+      p00 -= k0 * p00;
+    }
+
+    void updateVelocity(double measurement, double variance) {
+      double s = p11 + variance;
+      double k0 = p01 / s;
+      double k1 = p11 / s;
+      double residual = measurement - velocity;
+
+      position += k0 * residual;
+      velocity += k1 * residual;
+      p00 -= k0 * p01;
+      p01 -= k1 * p01;
+      p11 -= k1 * p11;
+    }
+  }
+}
@@ -0,0 +1,552 @@
+package com.agontuk.RNFusedLocation;
+
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+/**
+ * Recorded track parsed from a GPX, NMEA or CSV file. Points are stored flat
+ * as [time, latitude, longitude, accuracy, altitude, speed, bearing, ...],
+ * missing values are NaN. Recently parsed traces are cached by path until
+ * the file changes, up to MAX_CACHED_POINTS points in total.
+ */
+public class LocationTrace {
+  public static final int FIELD_COUNT = 7;
+  public static final int TIME = 0;
+  public static final int LATITUDE = 1;
+  public static final int LONGITUDE = 2;
+  public static final int ACCURACY = 3;
+  public static final int ALTITUDE = 4;
+  public static final int SPEED = 5;
+  public static final int BEARING = 6;
+
+  private static final long DEFAULT_STEP = 1000; /* 1 sec, for points without time */
+  private static final double KNOTS_TO_MPS = 0.514444;
+  private static final Pattern ISO_TIME = Pattern.compile(
+    "(\\d{4})-(\\d{2})-(\\d{2})T(\\d{2}):(\\d{2}):(\\d{2})(\\.\\d+)?(Z|[+-]\\d{2}:?\\d{2})?"
+  );
+  private static final int MAX_CACHED_POINTS = 100000; /* ~5.6MB */
+  private static final LruCache<String, LocationTrace> cache =
+    new LruCache<String, LocationTrace>(MAX_CACHED_POINTS) {
+      @Override
+      protected int sizeOf(String path, LocationTrace trace) {
+        return trace.size;
+      }
+    };
+
+  private final long lastModified;
+  private double[] points = new double[FIELD_COUNT * 64];
+  private int size = 0;
+
+  private LocationTrace(long lastModified) {
+    this.lastModified = lastModified;
+  }
+
+  public static synchronized LocationTrace load(File file) throws IOException {
+    String path = file.getPath();
+
+    if (!file.isFile()) {
+      cache.remove(path);
+      throw new IOException("Trace not found: " + path);
+    }
+
+    LocationTrace trace = cache.get(path);
+
+    if (trace != null && trace.lastModified == file.lastModified()) {
+      return trace;
+    }
+
+    cache.remove(path);
+
+    trace = new LocationTrace(file.lastModified());
+    String name = file.getName().toLowerCase(Locale.US);
+
+    if (name.endsWith(".gpx")) {
+      trace.parseGpx(file);
+    } else if (name.endsWith(".nmea")) {
+      trace.parseNmea(file);
+    } else if (name.endsWith(".csv")) {
+      trace.parseCsv(file);
+    } else {
+      // Sniff the format from the first character.
+      switch (readFirstChar(file)) {
+        case '<':
+          trace.parseGpx(file);
+          break;
+        case '$':
+          trace.parseNmea(file);
+          break;
+        default:
+          trace.parseCsv(file);
+      }
+    }
+
+    if (trace.size == 0) {
+      throw new IOException("Trace has no points: " + path);
+    }
+
+    trace.fillMissingTimes();
+    trace.points = Arrays.copyOf(trace.points, trace.size * FIELD_COUNT);
+    cache.put(path, trace);
+
+    return trace;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public double get(int index, int field) {
+    return points[index * FIELD_COUNT + field];
+  }
+
+  /**
+   * Trace time of a point in milliseconds.
+   */
+  public long getTime(int index) {
+    return (long) points[index * FIELD_COUNT + TIME];
+  }
+
+  private void add(
+    double time,
+    double latitude,
+    double longitude,
+    double accuracy,
+    double altitude,
+    double speed,
+    double bearing
+  ) {
+    if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+      return;
+    }
+
+    if ((size + 1) * FIELD_COUNT > points.length) {
+      points = Arrays.copyOf(points, points.length * 2);
+    }
+
+    int offset = size * FIELD_COUNT;
+    points[offset + TIME] = time;
+    points[offset + LATITUDE] = latitude;
+    points[offset + LONGITUDE] = longitude;
+    points[offset + ACCURACY] = accuracy;
+    points[offset + ALTITUDE] = altitude;
+    points[offset + SPEED] = speed;
+    points[offset + BEARING] = bearing;
+    size++;
+  }
+
+  /**
+   * Space points without time evenly after the previous one, and keep time
+   * monotonic so the replay never goes backwards.
+   */
+  private void fillMissingTimes() {
+    double previous = Double.NaN;
+
+    for (int i = 0; i < size; i++) {
+      int offset = i * FIELD_COUNT + TIME;
+
+      if (Double.isNaN(points[offset])) {
+        points[offset] = Double.isNaN(previous) ? 0 : previous + DEFAULT_STEP;
+      } else if (!Double.isNaN(previous) && points[offset] < previous) {
+        points[offset] = previous;
+      }
+
+      previous = points[offset];
+    }
+  }
+
+  private void parseGpx(File file) throws IOException {
+    try {
+      SAXParserFactory.newInstance().newSAXParser().parse(file, new DefaultHandler() {
+        private final StringBuilder text = new StringBuilder();
+        private boolean isInPoint = false;
+        private double latitude;
+        private double longitude;
+        private double time;
+        private double altitude;
+        private double speed;
+        private double bearing;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+          String name = getName(localName, qName);
+          text.setLength(0);
+
+          if (name.equals("trkpt") || name.equals("rtept") || name.equals("wpt")) {
+            isInPoint = true;
+            latitude = parseDouble(attributes.getValue("lat"));
+            longitude = parseDouble(attributes.getValue("lon"));
+            time = Double.NaN;
+            altitude = Double.NaN;
+            speed = Double.NaN;
+            bearing = Double.NaN;
+          }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+          text.append(ch, start, length);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+          if (!isInPoint) {
+            return;
+          }
+
+          String value = text.toString().trim();
+
+          switch (getName(localName, qName)) {
+            case "time":
+              time = parseIsoTime(value);
+              break;
+            case "ele":
+              altitude = parseDouble(value);
+              break;
+            case "speed":
+              speed = parseDouble(value);
+              break;
+            case "course":
+              bearing = parseDouble(value);
+              break;
+            case "trkpt":
+            case "rtept":
+            case "wpt":
+              isInPoint = false;
+              add(time, latitude, longitude, Double.NaN, altitude, speed, bearing);
+              break;
+          }
+        }
+      });
+    } catch (ParserConfigurationException | SAXException e) {
+      throw new IOException("Invalid GPX trace: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Points come from RMC sentences, with the altitude of the GGA sentence of
+   * the same fix. Traces without RMC sentences use GGA only.
+   */
+  private void parseNmea(File file) throws IOException {
+    LocationTrace ggaTrace = new LocationTrace(lastModified);
+    String ggaTime = null;
+    double ggaAltitude = Double.NaN;
+    double ggaAccuracy = Double.NaN;
+    long day = 0;
+    double previousGgaTime = Double.NaN;
+
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+
+    try {
+      String line;
+
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+
+        if (line.length() < 7 || line.charAt(0) != '$' || !isNmeaChecksumValid(line)) {
+          continue;
+        }
+
+        int checksumIndex = line.indexOf('*');
+        String[] fields = (checksumIndex > 0 ? line.substring(0, checksumIndex) : line).split(",", -1);
+        String type = fields[0];
+
+        if (type.endsWith("GGA") && fields.length > 9 && !fields[6].equals("0")) {
+          ggaTime = fields[1];
+          ggaAltitude = parseDouble(fields[9]);
+          // Rough accuracy estimate from the horizontal dilution of precision.
+          ggaAccuracy = parseDouble(fields[8]) * 5;
+
+          double time = parseNmeaTime(fields[1], null);
+
+          if (!Double.isNaN(time) && !Double.isNaN(previousGgaTime) && time < previousGgaTime) {
+            day++;
+          }
+
+          previousGgaTime = time;
+          ggaTrace.add(
+            time + day * 24 * 60 * 60 * 1000,
+            parseNmeaCoordinate(fields[2], fields[3]),
+            parseNmeaCoordinate(fields[4], fields[5]),
+            ggaAccuracy,
+            ggaAltitude,
+            Double.NaN,
+            Double.NaN
+          );
+        } else if (type.endsWith("RMC") && fields.length > 9 && fields[2].equals("A")) {
+          boolean isSameFix = fields[1].equals(ggaTime);
+
+          add(
+            parseNmeaTime(fields[1], fields[9]),
+            parseNmeaCoordinate(fields[3], fields[4]),
+            parseNmeaCoordinate(fields[5], fields[6]),
+            isSameFix ? ggaAccuracy : Double.NaN,
+            isSameFix ? ggaAltitude : Double.NaN,
+            parseDouble(fields[7]) * KNOTS_TO_MPS,
+            parseDouble(fields[8])
+          );
+        }
+      }
+    } finally {
+      reader.close();
+    }
+
+    if (size == 0) {
+      points = ggaTrace.points;
+      size = ggaTrace.size;
+    }
+  }
+
+  /**
+   * Columns are time, latitude, longitude, accuracy, altitude, speed, heading
+   * unless a header row names them. Time is epoch milliseconds or ISO 8601.
+   */
+  private void parseCsv(File file) throws IOException {
+    int[] columns = {0, 1, 2, 3, 4, 5, 6};
+
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+
+    try {
+      String line;
+      boolean isFirstLine = true;
+
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+
+        if (line.isEmpty() || line.charAt(0) == '#') {
+          continue;
+        }
+
+        String[] fields = line.split("[,;\\t]");
+
+        if (isFirstLine) {
+          isFirstLine = false;
+
+          if (Double.isNaN(parseDouble(fields[0])) && Double.isNaN(parseIsoTime(fields[0]))) {
+            columns = getCsvColumns(fields);
+            continue;
+          }
+        }
+
+        double time = getCsvField(fields, columns[TIME]);
+
+        if (Double.isNaN(time) && columns[TIME] >= 0 && columns[TIME] < fields.length) {
+          time = parseIsoTime(fields[columns[TIME]].trim());
+        }
+
+        add(
+          time,
+          getCsvField(fields, columns[LATITUDE]),
+          getCsvField(fields, columns[LONGITUDE]),
+          getCsvField(fields, columns[ACCURACY]),
+          getCsvField(fields, columns[ALTITUDE]),
+          getCsvField(fields, columns[SPEED]),
+          getCsvField(fields, columns[BEARING])
+        );
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static int[] getCsvColumns(String[] header) {
+    int[] columns = new int[FIELD_COUNT];
+    Arrays.fill(columns, -1);
+
+    for (int i = 0; i < header.length; i++) {
+      switch (header[i].trim().toLowerCase(Locale.US)) {
+        case "time":
+        case "timestamp":
+          columns[TIME] = i;
+          break;
+        case "lat":
+        case "latitude":
+          columns[LATITUDE] = i;
+          break;
+        case "lng":
+        case "lon":
+        case "longitude":
+          columns[LONGITUDE] = i;
+          break;
+        case "accuracy":
+          columns[ACCURACY] = i;
+          break;
+        case "altitude":
+        case "ele":
+          columns[ALTITUDE] = i;
+          break;
+        case "speed":
+          columns[SPEED] = i;
+          break;
+        case "heading":
+        case "bearing":
+          columns[BEARING] = i;
+          break;
+      }
+    }
+
+    return columns;
+  }
+
+  private static double getCsvField(String[] fields, int column) {
+    return column >= 0 && column < fields.length ? parseDouble(fields[column].trim()) : Double.NaN;
+  }
+
+  private static double parseDouble(@Nullable String value) {
+    if (value == null || value.isEmpty()) {
+      return Double.NaN;
+    }
+
+    try {
+      return Double.parseDouble(value);
+    } catch (NumberFormatException e) {
+      return Double.NaN;
+    }
+  }
+
+  private static double parseIsoTime(String value) {
+    Matcher matcher = ISO_TIME.matcher(value);
+
+    if (!matcher.matches()) {
+      return Double.NaN;
+    }
+
+    Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"), Locale.US);
+    calendar.clear();
+    calendar.set(
+      Integer.parseInt(matcher.group(1)),
+      Integer.parseInt(matcher.group(2)) - 1,
+      Integer.parseInt(matcher.group(3)),
+      Integer.parseInt(matcher.group(4)),
+      Integer.parseInt(matcher.group(5)),
+      Integer.parseInt(matcher.group(6))
+    );
+
+    double time = calendar.getTimeInMillis();
+    String fraction = matcher.group(7);
+    String zone = matcher.group(8);
+
+    if (fraction != null) {
+      time += Double.parseDouble(fraction) * 1000;
+    }
+
+    if (zone != null && !zone.equals("Z")) {
+      String digits = zone.replace(":", "");
+      int offset = Integer.parseInt(digits.substring(1, 3)) * 60 + Integer.parseInt(digits.substring(3, 5));
+      time -= (zone.charAt(0) == '-' ? -offset : offset) * 60 * 1000;
+    }
+
+    return time;
+  }
+
+  /**
+   * hhmmss.ss time, on the ddmmyy date if given.
+   */
+  private static double parseNmeaTime(String time, @Nullable String date) {
+    if (time.length() < 6) {
+      return Double.NaN;
+    }
+
+    try {
+      Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"), Locale.US);
+      calendar.clear();
+
+      if (date != null && date.length() == 6) {
+        int year = Integer.parseInt(date.substring(4, 6));
+
+        calendar.set(
+          year < 80 ? 2000 + year : 1900 + year,
+          Integer.parseInt(date.substring(2, 4)) - 1,
+          Integer.parseInt(date.substring(0, 2))
+        );
+      }
+
+      calendar.set(Calendar.HOUR_OF_DAY, Integer.parseInt(time.substring(0, 2)));
+      calendar.set(Calendar.MINUTE, Integer.parseInt(time.substring(2, 4)));
+      calendar.set(Calendar.SECOND, Integer.parseInt(time.substring(4, 6)));
+
+      double fraction = time.length() > 7 ? Double.parseDouble("0" + time.substring(6)) : 0;
+      return calendar.getTimeInMillis() + fraction * 1000;
+    } catch (NumberFormatException e) {
+      return Double.NaN;
+    }
+  }
+
+  /**
+   * (d)ddmm.mmmm with hemisphere to decimal degrees.
+   */
+  private static double parseNmeaCoordinate(String value, String hemisphere) {
+    double raw = parseDouble(value);
+
+    if (Double.isNaN(raw)) {
+      return Double.NaN;
+    }
+
+    double degrees = Math.floor(raw / 100);
+    double coordinate = degrees + (raw - degrees * 100) / 60;
+
+    return hemisphere.equals("S") || hemisphere.equals("W") ? -coordinate : coordinate;
+  }
+
+  private static boolean isNmeaChecksumValid(String line) {
+    int checksumIndex = line.indexOf('*');
+
+    if (checksumIndex < 0) {
+      return true;
+    }
+
+    int checksum = 0;
+
+    for (int i = 1; i < checksumIndex; i++) {
+      checksum ^= line.charAt(i);
+    }
+
+    try {
+      return checksum == Integer.parseInt(line.substring(checksumIndex + 1).trim(), 16);
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  private static String getName(String localName, String qName) {
+    String name = localName != null && !localName.isEmpty() ? localName : qName;
+    int prefixIndex = name.indexOf(':');
+
+    return prefixIndex >= 0 ? name.substring(prefixIndex + 1) : name;
+  }
+
+  private static int readFirstChar(File file) throws IOException {
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+
+    try {
+      int c;
+
+      do {
+        c = reader.read();
+      } while (c >= 0 && Character.isWhitespace(c));
+
+      // Skip a byte order mark.
+      return c == '\uFEFF' ? reader.read() : c;
+    } finally {
+      reader.close();
+    }
+  }
+}
@@ -15,12 +15,19 @@ import androidx.annotation.Nullable;
 import androidx.core.app.ActivityCompat;
 
 import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
 
 public class LocationUtils {
+  /**
+   * Number of fields in a compact location, anything after them is extra data
+   * like watch ids. Field order must be kept in sync with Geolocation.native.js
+   */
+  public static final int COMPACT_LOCATION_SIZE = 10;
+
   /**
    * Calculates the age of a location fix in milliseconds
    */
@@ -32,6 +39,37 @@ public class LocationUtils {
     return System.currentTimeMillis() - location.getTime();
   }
 
+  /**
+   * Check if a last known location can be returned instead of requesting a
+   * new one, it must be recent and accurate enough.
+   */
+  public static boolean isLastLocationUsable(Location location, LocationOptions locationOptions) {
+    float desiredAccuracy = locationOptions.getDesiredAccuracy();
+
+    return getLocationAge(location) < locationOptions.getMaximumAge() &&
+      location.getAccuracy() <= locationOptions.getMaxAccuracy() &&
+      (desiredAccuracy <= 0 || location.getAccuracy() <= desiredAccuracy);
+  }
+
+  /**
+   * Returns the time of a location fix in milliseconds, using elapsed realtime
+   * where available so it's not affected by clock changes
+   */
+  public static long getElapsedTime(Location location) {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+      return location.getElapsedRealtimeNanos() / 1000000;
+    }
+
+    return location.getTime();
+  }
+
+  /**
+   * Calculates the time elapsed between two location fixes in milliseconds
+   */
+  public static long getTimeBetween(Location from, Location to) {
+    return getElapsedTime(to) - getElapsedTime(from);
+  }
+
   /**
    * Check if location permissions are granted.
    */
@@ -40,6 +78,14 @@ public class LocationUtils {
       ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_COARSE_LOCATION) == PackageManager.PERMISSION_GRANTED;
   }
 
+  /**
+   * Background location access is a separate permission since android 10.
+   */
+  public static boolean hasBackgroundLocationPermission(Context context) {
+    return Build.VERSION.SDK_INT < Build.VERSION_CODES.Q ||
+      ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_BACKGROUND_LOCATION) == PackageManager.PERMISSION_GRANTED;
+  }
+
   /**
    * Check if google play service is available on device.
    */
@@ -151,6 +197,72 @@ public class LocationUtils {
     return map;
   }
 
+  /**
+   * Pack location into a flat array, which is much cheaper to send over the
+   * bridge than nested maps.
+   *
+   * [latitude, longitude, altitude, accuracy, heading, speed,
+   *  altitudeAccuracy, timestamp, provider, mocked]
+   */
+  public static WritableArray locationToArray(Location location) {
+    WritableArray array = Arguments.createArray();
+
+    array.pushDouble(location.getLatitude());
+    array.pushDouble(location.getLongitude());
+    array.pushDouble(location.getAltitude());
+    array.pushDouble(location.getAccuracy());
+    array.pushDouble(location.getBearing());
+    array.pushDouble(location.getSpeed());
+
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+      array.pushDouble(location.getVerticalAccuracyMeters());
+    } else {
+      array.pushNull();
+    }
+
+    array.pushDouble(location.getTime());
+
+    int providerCode = getProviderCode(location.getProvider());
+
+    if (providerCode >= 0) {
+      array.pushInt(providerCode);
+    } else {
+      array.pushString(location.getProvider());
+    }
+
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+      array.pushInt(location.isFromMockProvider() ? 1 : 0);
+    } else {
+      array.pushNull();
+    }
+
+    return array;
+  }
+
+  /**
+   * Numeric code of the well known location providers, -1 for others.
+   */
+  public static int getProviderCode(@Nullable String provider) {
+    if (provider == null) {
+      return -1;
+    }
+
+    switch (provider) {
+      case "fused":
+        return 0;
+      case LocationManager.GPS_PROVIDER:
+        return 1;
+      case LocationManager.NETWORK_PROVIDER:
+        return 2;
+      case LocationManager.PASSIVE_PROVIDER:
+        return 3;
+      case ReplayLocationProvider.PROVIDER:
+        return 4;
+      default:
+        return -1;
+    }
+  }
+
   private static String getDefaultErrorMessage(LocationError locationError) {
     switch (locationError) {
       case PERMISSION_DENIED:
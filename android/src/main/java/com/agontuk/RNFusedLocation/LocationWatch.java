@@ -0,0 +1,82 @@
+package com.agontuk.RNFusedLocation;
+
+import android.location.Location;
+
+/**
+ * A single watchPosition subscriber. Updates from the shared hardware request
+ * are thinned down to this watcher's own interval & distance filter.
+ */
+public class LocationWatch {
+  private final int id;
+  private final LocationOptions locationOptions;
+  private LocationOptions samplingOptions;
+  private final float[] distance = new float[1];
+
+  // Last delivered location is kept as primitives, as the location passed to
+  // accept might be reused by the caller.
+  private boolean hasLastLocation = false;
+  private double lastLatitude;
+  private double lastLongitude;
+  private long lastTime;
+
+  public LocationWatch(int id, LocationOptions locationOptions) {
+    this.id = id;
+    this.locationOptions = locationOptions;
+    this.samplingOptions = locationOptions;
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  public LocationOptions getLocationOptions() {
+    return locationOptions;
+  }
+
+  /**
+   * Thin updates to the interval the adaptive sampler currently requests
+   * instead of the one this watcher asked for.
+   */
+  public void setSamplingOptions(LocationOptions samplingOptions) {
+    this.samplingOptions = samplingOptions;
+  }
+
+  /**
+   * Check if the location should be delivered to this watcher, and remember
+   * it as the last delivered one if so.
+   */
+  public boolean accept(Location location) {
+    if (location.getAccuracy() > locationOptions.getMaxAccuracy()) {
+      return false;
+    }
+
+    long time = LocationUtils.getElapsedTime(location);
+
+    if (hasLastLocation) {
+      // Leave some room for delivery jitter of the hardware request.
+      long minTime = samplingOptions.getFastestInterval() * 9 / 10;
+
+      if (time - lastTime < minTime) {
+        return false;
+      }
+
+      Location.distanceBetween(
+        lastLatitude,
+        lastLongitude,
+        location.getLatitude(),
+        location.getLongitude(),
+        distance
+      );
+
+      if (distance[0] < locationOptions.getDistanceFilter()) {
+        return false;
+      }
+    }
+
+    hasLastLocation = true;
+    lastLatitude = location.getLatitude();
+    lastLongitude = location.getLongitude();
+    lastTime = time;
+    return true;
+  }
+}
@@ -0,0 +1,89 @@
+package com.agontuk.RNFusedLocation;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.SettingsClient;
+
+/**
+ * Process wide holder for Play Services availability and the location
+ * clients, shared by every provider instead of resolving them per request.
+ * Availability is checked again once the Play Services package changes.
+ */
+public class PlayServices {
+  private static final String PACKAGE_NAME = "com.google.android.gms";
+
+  @Nullable private static PlayServices instance;
+
+  private final Context context;
+  private final BroadcastReceiver packageReceiver = new BroadcastReceiver() {
+    @Override
+    public void onReceive(Context context, Intent intent) {
+      Uri data = intent.getData();
+
+      if (data != null && PACKAGE_NAME.equals(data.getSchemeSpecificPart())) {
+        Log.d(RNFusedLocationModule.TAG, "play services package changed: " + intent.getAction());
+        isAvailable = null;
+      }
+    }
+  };
+
+  @Nullable private volatile Boolean isAvailable;
+  @Nullable private FusedLocationProviderClient fusedLocationProviderClient;
+  @Nullable private SettingsClient settingsClient;
+
+  private PlayServices(Context context) {
+    this.context = context;
+
+    IntentFilter filter = new IntentFilter();
+    filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+    filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+    filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+    filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+    filter.addDataScheme("package");
+    context.registerReceiver(packageReceiver, filter);
+  }
+
+  public static synchronized PlayServices getInstance(Context context) {
+    if (instance == null) {
+      instance = new PlayServices(context.getApplicationContext());
+    }
+
+    return instance;
+  }
+
+  public boolean isAvailable() {
+    Boolean available = isAvailable;
+
+    if (available == null) {
+      available = LocationUtils.isGooglePlayServicesAvailable(context);
+      isAvailable = available;
+    }
+
+    return available;
+  }
+
+  public synchronized FusedLocationProviderClient getFusedLocationProviderClient() {
+    if (fusedLocationProviderClient == null) {
+      fusedLocationProviderClient = LocationServices.getFusedLocationProviderClient(context);
+    }
+
+    return fusedLocationProviderClient;
+  }
+
+  public synchronized SettingsClient getSettingsClient() {
+    if (settingsClient == null) {
+      settingsClient = LocationServices.getSettingsClient(context);
+    }
+
+    return settingsClient;
+  }
+}
@@ -1,35 +1,142 @@
 package com.agontuk.RNFusedLocation;
 
 import android.app.Activity;
+import android.content.Context;
 import android.content.Intent;
 import android.location.Location;
+import android.location.LocationManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import com.facebook.react.bridge.ActivityEventListener;
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Callback;
+import com.facebook.react.bridge.LifecycleEventListener;
+import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
-import com.facebook.react.modules.core.DeviceEventManagerModule.RCTDeviceEventEmitter;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-public class RNFusedLocationModule extends ReactContextBaseJavaModule implements ActivityEventListener, LocationChangeListener {
+public class RNFusedLocationModule extends ReactContextBaseJavaModule implements ActivityEventListener, LifecycleEventListener, LocationChangeListener, TimerWheel.Listener {
   public static final String TAG = "RNFusedLocation";
-  private final HashMap<LocationProvider, PendingLocationRequest> pendingRequests;
+  private static final int DEFAULT_WATCH_ID = -1;
+  private static final int RING_BUFFER_CAPACITY = 256;
+  private static final long TIMER_TICK = 50;
+  private static final int MAX_PENDING_REQUESTS = 128;
+  private static final long MAX_REQUEST_AGE = 10 * 60 * 1000; /* 10 mins */
+  private static final LocationProviderFactory DEFAULT_PROVIDER_FACTORY = new LocationProviderFactory() {
+    @Override
+    public LocationProvider create(
+      Context context,
+      LocationChangeListener locationChangeListener,
+      LocationSettingsCache locationSettingsCache,
+      Looper looper,
+      LocationOptions locationOptions
+    ) {
+      return createLocationProvider(
+        context,
+        locationChangeListener,
+        locationSettingsCache,
+        looper,
+        locationOptions
+      );
+    }
+  };
+  private final HashMap<LocationProvider, LocationRequestSession> pendingRequests;
+  private final HashMap<Integer, PendingLocationRequest> requestsById;
+  private final HashMap<Integer, LocationWatch> watches;
+  private final HandlerThread workerThread;
+  private final Handler handler;
+  private final TimerWheel timerWheel;
+  private final LocationCache locationCache;
+  private final LocationFilter locationFilter;
+  private final LocationSmoother locationSmoother;
+  private final AdaptiveSampler adaptiveSampler;
+  private final LocationSettingsCache locationSettingsCache;
+  private final LocationDiagnostics diagnostics;
+  private final Location smoothedLocation;
+  private final LocationRingBuffer locationRingBuffer;
+  private final GeofenceMonitor geofenceMonitor;
+  private final BackgroundLocationUpdates backgroundLocationUpdates;
+  private final AtomicBoolean isRingBufferSignalPending;
+  private final EventEmitter eventEmitter;
+  private final LocationProviderFactory locationProviderFactory;
+  private final Runnable flushRunnable = new Runnable() {
+    @Override
+    public void run() {
+      flushLocationBuffer();
+    }
+  };
   @Nullable private LocationProvider continuousLocationProvider;
+  @Nullable private LocationOptions continuousLocationOptions;
+  @Nullable private WritableArray locationBuffer;
+  @Nullable private TrackSimplifier trackSimplifier;
+  private boolean hasSmoothingWatch = false;
+  private int[] watchIdBuffer = new int[4];
+  // Time of the provider callback being handled, for fix to emit latency.
+  private long callbackTime;
 
   public RNFusedLocationModule(ReactApplicationContext reactContext) {
+    this(reactContext, new ReactEventEmitter(reactContext), DEFAULT_PROVIDER_FACTORY);
+  }
+
+  @VisibleForTesting
+  RNFusedLocationModule(
+    ReactApplicationContext reactContext,
+    EventEmitter eventEmitter,
+    LocationProviderFactory locationProviderFactory
+  ) {
     super(reactContext);
 
     reactContext.addActivityEventListener(this);
+    reactContext.addLifecycleEventListener(this);
     this.pendingRequests = new HashMap<>();
+    this.requestsById = new HashMap<>();
+    this.watches = new HashMap<>();
+    this.workerThread = new HandlerThread(TAG);
+    this.workerThread.start();
+    this.handler = new Handler(workerThread.getLooper());
+    this.eventEmitter = eventEmitter;
+    this.locationProviderFactory = locationProviderFactory;
+    this.timerWheel = new TimerWheel(handler, TIMER_TICK, this);
+    this.locationCache = new LocationCache(reactContext);
+    this.locationFilter = new LocationFilter();
+    this.locationSmoother = new LocationSmoother();
+    this.smoothedLocation = new Location(TAG);
+    this.locationRingBuffer = new LocationRingBuffer(RING_BUFFER_CAPACITY);
+    this.geofenceMonitor = new GeofenceMonitor(eventEmitter);
+    this.adaptiveSampler = new AdaptiveSampler();
+    this.diagnostics = new LocationDiagnostics();
+    this.locationSettingsCache = new LocationSettingsCache(reactContext, diagnostics);
+    this.locationSettingsCache.register();
+    this.backgroundLocationUpdates = new BackgroundLocationUpdates(
+      reactContext,
+      eventEmitter,
+      this,
+      locationSettingsCache,
+      workerThread.getLooper()
+    );
+    this.isRingBufferSignalPending = new AtomicBoolean(false);
 
     Log.i(TAG, TAG + " initialized");
   }
@@ -41,104 +148,649 @@ public class RNFusedLocationModule extends ReactContextBaseJavaModule implements
   }
 
   @Override
-  public void onActivityResult(Activity activity, int requestCode, int resultCode, Intent data) {
-    if (continuousLocationProvider != null &&
-      continuousLocationProvider.onActivityResult(requestCode, resultCode)
-    ) {
-      return;
-    }
+  public void onActivityResult(Activity activity, final int requestCode, final int resultCode, Intent data) {
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        dispatchActivityResult(requestCode, resultCode);
+      }
+    });
+  }
 
-    Set<LocationProvider> providers = pendingRequests.keySet();
+  @Override
+  public void onNewIntent(Intent intent) {
+    //
+  }
 
-    for (LocationProvider locationProvider: providers) {
-      if (locationProvider.onActivityResult(requestCode, resultCode)) {
-        return;
+  @Override
+  public void onHostResume() {
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        backgroundLocationUpdates.emitStoredLocations();
       }
-    }
+    });
   }
 
   @Override
-  public void onNewIntent(Intent intent) {
+  public void onHostPause() {
+    //
+  }
+
+  @Override
+  public void onHostDestroy() {
     //
   }
 
   @Override
   public void onLocationChange(LocationProvider locationProvider, Location location) {
-    WritableMap locationData = LocationUtils.locationToMap(location);
+    callbackTime = System.nanoTime();
 
     if (locationProvider.equals(continuousLocationProvider)) {
-      emitEvent("geolocationDidChange", locationData);
+      onWatchLocationChange(location);
       return;
     }
 
-    PendingLocationRequest request =  pendingRequests.get(locationProvider);
+    LocationRequestSession session = pendingRequests.get(locationProvider);
 
-    if (request != null) {
-      request.successCallback.invoke(locationData);
-      pendingRequests.remove(locationProvider);
+    if (session == null) {
+      return;
+    }
+
+    if (!session.hasFix) {
+      session.hasFix = true;
+      diagnostics.recordTimeToFirstFix(
+        locationProvider,
+        session.locationOptions.getAccuracy(),
+        SystemClock.elapsedRealtime() - session.startTime
+      );
     }
+
+    if (!session.isAcceptable(location)) {
+      // Keep the best fix in case none of the sources delivers an acceptable
+      // one, all of them keep sampling until there's a winner or the deadline.
+      session.offer(locationProvider, location, callbackTime);
+      return;
+    }
+
+    locationCache.put(location);
+    deliverLocation(session, location, session.providers.get(locationProvider), callbackTime, false);
   }
 
   @Override
-  public void onLocationError(LocationProvider locationProvider, LocationError error, @Nullable String message) {
-    WritableMap errorData = LocationUtils.buildError(error, message);
+  public void onLocationBatch(LocationProvider locationProvider, List<Location> locations) {
+    if (locations.isEmpty()) {
+      return;
+    }
+
+    if (!locationProvider.equals(continuousLocationProvider)) {
+      onLocationChange(locationProvider, locations.get(locations.size() - 1));
+      return;
+    }
+
+    callbackTime = System.nanoTime();
+    locationCache.put(locations.get(locations.size() - 1));
+
+    WritableArray batch = Arguments.createArray();
+    int batchedCount = 0;
+
+    for (Location location: locations) {
+      geofenceMonitor.evaluate(location);
+      updateSampling(location);
+
+      if (!locationFilter.accept(location)) {
+        continue;
+      }
+
+      simplifyLocation(location);
+      batchedCount += dispatchWatchLocation(location, false, batch);
+
+      if (hasSmoothingWatch) {
+        batchedCount += dispatchWatchLocation(smoothLocation(location), true, batch);
+      }
+    }
+
+    if (batch.size() > 0) {
+      eventEmitter.emit("geolocationBatch", batch);
+    }
+
+    for (int i = 0; i < batchedCount; i++) {
+      recordFixEmitted(callbackTime);
+    }
+  }
 
+  @Override
+  public void onLocationError(LocationProvider locationProvider, LocationError error, @Nullable String message) {
     if (locationProvider.equals(continuousLocationProvider)) {
-      emitEvent("geolocationError", errorData);
+      diagnostics.recordError(error);
+      eventEmitter.emit("geolocationError", LocationUtils.buildError(error, message));
       return;
     }
 
-    PendingLocationRequest request =  pendingRequests.get(locationProvider);
+    LocationRequestSession session = pendingRequests.get(locationProvider);
 
-    if (request != null) {
-      request.errorCallback.invoke(errorData);
-      pendingRequests.remove(locationProvider);
+    if (session == null) {
+      return;
+    }
+
+    removeSessionProvider(session, locationProvider);
+
+    // A race only fails once all of its sources did. The passive source only
+    // sees fixes requested by others, it can't finish a race on its own.
+    if (session.hasActiveSource()) {
+      return;
+    }
+
+    if (session.bestLocation != null) {
+      deliverLocation(session, session.bestLocation, session.bestSource, session.bestCallbackTime, true);
+      return;
+    }
+
+    stopSession(session);
+
+    for (PendingLocationRequest request: session.requests) {
+      finishRequest(request);
+      diagnostics.recordError(error);
+      request.errorCallback.invoke(LocationUtils.buildError(error, message));
     }
   }
 
+  @Override
+  public void onTimerExpired(TimerWheel.Timer timer) {
+    PendingLocationRequest request = (PendingLocationRequest) timer;
+    LocationRequestSession session = request.session;
+
+    session.requests.remove(request);
+    finishRequest(request);
+    diagnostics.recordTimeout();
+
+    // Deadline of an accuracy converging request or a race, return the best
+    // location so far. Other requests accept every fix and never have one.
+    if (session.bestLocation != null) {
+      request.successCallback.invoke(buildLocationData(session.bestLocation, false, true));
+      recordFixEmitted(session.bestCallbackTime);
+    } else {
+      diagnostics.recordError(LocationError.TIMEOUT);
+      request.errorCallback.invoke(LocationUtils.buildError(LocationError.TIMEOUT, null));
+    }
+
+    // Stop the shared session once nobody is waiting for it anymore.
+    if (session.requests.isEmpty()) {
+      stopSession(session);
+    }
+  }
+
+  /**
+   * Request a single location. The request id is assigned by JS and can be
+   * passed to cancel.
+   */
   @ReactMethod
-  public void getCurrentPosition(ReadableMap options, final Callback success, final Callback error) {
-    ReactApplicationContext context = getContext();
+  public void getCurrentPosition(
+    final int requestId,
+    ReadableMap options,
+    final Callback success,
+    final Callback error
+  ) {
+    final LocationOptions locationOptions;
 
-    if (!LocationUtils.hasLocationPermission(context)) {
-      error.invoke(LocationUtils.buildError(LocationError.PERMISSION_DENIED, null));
+    try {
+      locationOptions = LocationOptions.fromReadableMap(options);
+    } catch (IllegalArgumentException e) {
+      error.invoke(LocationUtils.buildError(LocationError.INTERNAL_ERROR, e.getMessage()));
+      return;
+    }
+
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        requestCurrentPosition(requestId, locationOptions, success, error);
+      }
+    });
+  }
+
+  /**
+   * Drop a pending getCurrentPosition request without invoking its callbacks.
+   * Providers are stopped once no other request is waiting for them.
+   */
+  @ReactMethod
+  public void cancel(final int requestId) {
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        PendingLocationRequest request = requestsById.get(requestId);
+
+        if (request == null) {
+          return;
+        }
+
+        finishRequest(request);
+        request.session.requests.remove(request);
+
+        if (request.session.requests.isEmpty()) {
+          stopSession(request.session);
+        }
+      }
+    });
+  }
+
+  /**
+   * Parse options once, later calls pass { profileId } instead of the options.
+   * Invalid options are reported as a geolocationError, there's no callback.
+   */
+  @ReactMethod
+  public void registerOptionsProfile(int profileId, ReadableMap options) {
+    final LocationOptions locationOptions;
+
+    try {
+      locationOptions = LocationOptions.fromReadableMap(options);
+    } catch (IllegalArgumentException e) {
+      eventEmitter.emit("geolocationError", LocationUtils.buildError(LocationError.INTERNAL_ERROR, e.getMessage()));
       return;
     }
 
-    LocationOptions locationOptions = LocationOptions.fromReadableMap(options);
-    final LocationProvider locationProvider = createLocationProvider(locationOptions.isForceLocationManager());
+    LocationOptions.registerProfile(profileId, locationOptions);
+  }
 
-    pendingRequests.put(locationProvider, new PendingLocationRequest(success, error));
-    locationProvider.getCurrentLocation(locationOptions);
+  @ReactMethod
+  public void removeOptionsProfile(int profileId) {
+    LocationOptions.removeProfile(profileId);
   }
 
   @ReactMethod
   public void startObserving(ReadableMap options) {
-    ReactApplicationContext context = getContext();
+    addWatch(DEFAULT_WATCH_ID, options);
+  }
 
-    if (!LocationUtils.hasLocationPermission(context)) {
-      emitEvent(
-        "geolocationError",
-        LocationUtils.buildError(LocationError.PERMISSION_DENIED, null)
-      );
+  @ReactMethod
+  public void stopObserving() {
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        watches.clear();
+        updateContinuousLocationProvider();
+      }
+    });
+  }
+
+  @ReactMethod
+  public void addWatch(final int watchId, ReadableMap options) {
+    final LocationOptions locationOptions;
+
+    try {
+      locationOptions = LocationOptions.fromReadableMap(options);
+    } catch (IllegalArgumentException e) {
+      eventEmitter.emit("geolocationError", LocationUtils.buildError(LocationError.INTERNAL_ERROR, e.getMessage()));
       return;
     }
 
-    LocationOptions locationOptions = LocationOptions.fromReadableMap(options);
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        ReactApplicationContext context = getContext();
 
-    if (continuousLocationProvider == null) {
-      continuousLocationProvider = createLocationProvider(locationOptions.isForceLocationManager());
+        if (!LocationUtils.hasLocationPermission(context)) {
+          diagnostics.recordError(LocationError.PERMISSION_DENIED);
+          eventEmitter.emit(
+            "geolocationError",
+            LocationUtils.buildError(LocationError.PERMISSION_DENIED, null)
+          );
+          return;
+        }
+
+        watches.put(watchId, new LocationWatch(watchId, locationOptions));
+        updateContinuousLocationProvider();
+      }
+    });
+  }
+
+  @ReactMethod
+  public void clearWatch(final int watchId) {
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        if (watches.remove(watchId) != null) {
+          updateContinuousLocationProvider();
+        }
+      }
+    });
+  }
+
+  /**
+   * Stop every provider and drop all callbacks, nothing may outlive the React
+   * instance since JS can't receive anything anymore. Recording & background
+   * updates don't depend on JS and keep running.
+   */
+  @Override
+  public void onCatalystInstanceDestroy() {
+    getContext().removeActivityEventListener(this);
+    getContext().removeLifecycleEventListener(this);
+    LocationOptions.clearProfiles();
+
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        // Pending locations can't be delivered anymore.
+        handler.removeCallbacks(flushRunnable);
+        locationBuffer = null;
+
+        for (LocationProvider locationProvider: pendingRequests.keySet()) {
+          locationProvider.removeLocationUpdates();
+        }
+
+        pendingRequests.clear();
+        requestsById.clear();
+        timerWheel.clear();
+        watches.clear();
+        geofenceMonitor.clear();
+        trackSimplifier = null;
+        backgroundLocationUpdates.setBatchObserved(false);
+        updateContinuousLocationProvider();
+        locationCache.persist();
+        locationSettingsCache.unregister();
+        quitWorkerThread();
+      }
+    });
+  }
+
+  /**
+   * Read locations written to the ring buffer since the given sequence. Called
+   * by JS after geolocationDidChange signals that new data is available.
+   */
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  public WritableArray readLocations(double fromSequence) {
+    isRingBufferSignalPending.set(false);
+    return locationRingBuffer.read((long) fromSequence);
+  }
+
+  /**
+   * Keep the location cache in memory only when disabled, the snapshot stored
+   * on disk is deleted right away.
+   */
+  @ReactMethod
+  public void setLocationCachePersistence(boolean enabled, Promise promise) {
+    locationCache.setPersistent(enabled);
+    promise.resolve(null);
+  }
+
+  @ReactMethod
+  public void clearLocationCache(Promise promise) {
+    locationCache.clear();
+    promise.resolve(null);
+  }
+
+  /**
+   * Record continuous updates natively with the given options, independent of
+   * any watchers and of the React instance.
+   */
+  @ReactMethod
+  public void startRecording(ReadableMap options, Promise promise) {
+    LocationOptions locationOptions;
+
+    try {
+      locationOptions = LocationOptions.fromReadableMap(options);
+    } catch (IllegalArgumentException e) {
+      rejectInvalidOptions(promise, e);
+      return;
     }
 
-    continuousLocationProvider.requestLocationUpdates(locationOptions);
+    if (!LocationUtils.hasLocationPermission(getContext())) {
+      rejectPromise(promise, LocationError.PERMISSION_DENIED, null);
+      return;
+    }
+
+    LocationRecording.getInstance(getContext()).start(locationOptions, promise);
   }
 
   @ReactMethod
-  public void stopObserving() {
-    if (continuousLocationProvider != null) {
-      continuousLocationProvider.removeLocationUpdates();
-      continuousLocationProvider = null;
+  public void stopRecording(Promise promise) {
+    LocationRecording.getInstance(getContext()).stop(promise);
+  }
+
+  @ReactMethod
+  public void flushRecording(Promise promise) {
+    LocationRecording.getInstance(getContext()).flush(promise);
+  }
+
+  @ReactMethod
+  public void readRecording(double offset, double limit, Promise promise) {
+    LocationRecording.getInstance(getContext()).read((long) offset, (int) limit, promise);
+  }
+
+  @ReactMethod
+  public void clearRecording(Promise promise) {
+    LocationRecording.getInstance(getContext()).clear(promise);
+  }
+
+  /**
+   * Register geofences which are evaluated natively against every continuous
+   * fix, only transitions are sent to JS. Location updates are kept running
+   * with the options of all calls while any geofence is registered.
+   */
+  @ReactMethod
+  public void addGeofences(final ReadableArray geofences, ReadableMap options, final Promise promise) {
+    final LocationOptions locationOptions;
+
+    try {
+      locationOptions = LocationOptions.fromReadableMap(options);
+    } catch (IllegalArgumentException e) {
+      rejectInvalidOptions(promise, e);
+      return;
     }
+
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        if (!LocationUtils.hasLocationPermission(getContext())) {
+          rejectPromise(promise, LocationError.PERMISSION_DENIED, null);
+          return;
+        }
+
+        try {
+          geofenceMonitor.add(geofences, locationOptions);
+        } catch (RuntimeException e) {
+          rejectPromise(promise, LocationError.INTERNAL_ERROR, "Invalid geofence: " + e.getMessage());
+          return;
+        }
+
+        updateContinuousLocationProvider();
+        promise.resolve(geofenceMonitor.size());
+      }
+    });
+  }
+
+  @ReactMethod
+  public void removeGeofences(final ReadableArray ids, final Promise promise) {
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        geofenceMonitor.remove(ids);
+        updateContinuousLocationProvider();
+        promise.resolve(geofenceMonitor.size());
+      }
+    });
+  }
+
+  @ReactMethod
+  public void clearGeofences(final Promise promise) {
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        geofenceMonitor.clear();
+        updateContinuousLocationProvider();
+        promise.resolve(null);
+      }
+    });
+  }
+
+  /**
+   * Deliver updates through a PendingIntent to BackgroundLocationReceiver,
+   * which stores them natively without waking JS. Stored locations are sent
+   * in one batch when the app resumes, or read with flushBackgroundLocations.
+   * Updates keep running until stopBackgroundUpdates, even if the app is
+   * killed.
+   */
+  @ReactMethod
+  public void startBackgroundUpdates(ReadableMap options, final Promise promise) {
+    final LocationOptions locationOptions;
+
+    try {
+      locationOptions = LocationOptions.fromReadableMap(options);
+    } catch (IllegalArgumentException e) {
+      rejectInvalidOptions(promise, e);
+      return;
+    }
+
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        LocationError error = backgroundLocationUpdates.start(locationOptions);
+
+        if (error != null) {
+          rejectPromise(promise, error, null);
+          return;
+        }
+
+        promise.resolve(null);
+      }
+    });
+  }
+
+  @ReactMethod
+  public void stopBackgroundUpdates(final Promise promise) {
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        backgroundLocationUpdates.stop();
+        promise.resolve(null);
+      }
+    });
+  }
+
+  /**
+   * Remove & resolve up to limit of the oldest stored background locations
+   * as { locations, remaining, dropped }, meant for headless tasks.
+   */
+  @ReactMethod
+  public void flushBackgroundLocations(final int limit, final Promise promise) {
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          WritableMap page = backgroundLocationUpdates.drain(limit);
+
+          if (page == null) {
+            page = Arguments.createMap();
+            page.putArray("locations", Arguments.createArray());
+            page.putDouble("remaining", 0);
+            page.putDouble("dropped", 0);
+          }
+
+          promise.resolve(page);
+        } catch (IOException e) {
+          rejectPromise(promise, LocationError.INTERNAL_ERROR, e.getMessage());
+        }
+      }
+    });
+  }
+
+  /**
+   * Stored background locations are only emitted on resume while JS listens,
+   * otherwise they'd be drained and lost.
+   */
+  @ReactMethod
+  public void setBackgroundBatchObserved(final boolean isObserved) {
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        backgroundLocationUpdates.setBatchObserved(isObserved);
+      }
+    });
+  }
+
+  /**
+   * Simplify a flat [lat, lng, lat, lng, ...] track with the given tolerance
+   * in meters, resolves with an encoded polyline or a packed array.
+   */
+  @ReactMethod
+  public void simplifyTrack(ReadableArray track, double tolerance, String format, Promise promise) {
+    double[] coordinates = new double[track.size()];
+
+    for (int i = 0; i < coordinates.length; i++) {
+      coordinates[i] = track.getDouble(i);
+    }
+
+    promise.resolve(TrackSimplifier.toOutput(TrackSimplifier.simplify(coordinates, tolerance), format));
+  }
+
+  /**
+   * Simplify the recorded track without sending the raw locations to JS.
+   */
+  @ReactMethod
+  public void simplifyRecording(double tolerance, String format, Promise promise) {
+    LocationRecording.getInstance(getContext()).simplify(tolerance, format, promise);
+  }
+
+  /**
+   * Keep a simplified track of the watched locations up to date as they arrive.
+   */
+  @ReactMethod
+  public void startTrackSimplification(final double tolerance) {
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        trackSimplifier = new TrackSimplifier(tolerance);
+      }
+    });
+  }
+
+  @ReactMethod
+  public void getSimplifiedTrack(final String format, final Promise promise) {
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        double[] coordinates = trackSimplifier != null ? trackSimplifier.getCoordinates() : new double[0];
+        promise.resolve(TrackSimplifier.toOutput(coordinates, format));
+      }
+    });
+  }
+
+  @ReactMethod
+  public void stopTrackSimplification() {
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        trackSimplifier = null;
+      }
+    });
+  }
+
+  /**
+   * Latency histograms (time to first fix per provider type & accuracy, fast
+   * first fix wins per source, time to fix, settings check and fix to emit)
+   * along with request, cache & filter counters.
+   */
+  @ReactMethod
+  public void getDiagnostics(final Promise promise) {
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        WritableMap diagnosticsData = diagnostics.toMap();
+        diagnosticsData.putDouble("cacheHits", locationCache.getHitCount());
+        diagnosticsData.putDouble("cacheMisses", locationCache.getMissCount());
+        diagnosticsData.putDouble("settingsCacheHits", locationSettingsCache.getHitCount());
+        diagnosticsData.putDouble("settingsCacheMisses", locationSettingsCache.getMissCount());
+        diagnosticsData.putMap("filter", locationFilter.getStats());
+        diagnosticsData.putDouble("pendingRequests", requestsById.size());
+        diagnosticsData.putDouble(
+          "activeProviders",
+          pendingRequests.size() +
+            (continuousLocationProvider != null ? 1 : 0) +
+            (LocationRecording.isRecording() ? 1 : 0) +
+            (backgroundLocationUpdates.isActive() ? 1 : 0)
+        );
+        promise.resolve(diagnosticsData);
+      }
+    });
   }
 
   @ReactMethod
@@ -151,32 +803,724 @@ public class RNFusedLocationModule extends ReactContextBaseJavaModule implements
     // Keep: Required for RN built in Event Emitter Calls.
   }
 
-  private LocationProvider createLocationProvider(boolean forceLocationManager) {
+  private void requestCurrentPosition(
+    int requestId,
+    LocationOptions locationOptions,
+    Callback success,
+    Callback error
+  ) {
     ReactApplicationContext context = getContext();
-    boolean playServicesAvailable = LocationUtils.isGooglePlayServicesAvailable(context);
 
-    if (forceLocationManager || !playServicesAvailable) {
-      return new LocationManagerProvider(context, this);
+    if (!LocationUtils.hasLocationPermission(context)) {
+      diagnostics.recordError(LocationError.PERMISSION_DENIED);
+      error.invoke(LocationUtils.buildError(LocationError.PERMISSION_DENIED, null));
+      return;
+    }
+
+    // Without a finite maximumAge the provider returns the platform's last
+    // location instead, otherwise the cache would never be refreshed.
+    Location cachedLocation = Double.isInfinite(locationOptions.getMaximumAge())
+      ? null
+      : locationCache.get(locationOptions.getAccuracy(), locationOptions.getMaximumAge());
+
+    // Cached fixes must satisfy the same accuracy as fresh ones.
+    if (cachedLocation != null && isAcceptable(locationOptions, cachedLocation)) {
+      success.invoke(
+        locationOptions.isCompactPayload()
+          ? LocationUtils.locationToArray(cachedLocation)
+          : LocationUtils.locationToMap(cachedLocation)
+      );
+      return;
     }
 
-    return new FusedLocationProvider(context, this);
+    for (LocationRequestSession session: pendingRequests.values()) {
+      if (session.canJoin(locationOptions)) {
+        addPendingRequest(session, requestId, locationOptions, success, error);
+        return;
+      }
+    }
+
+    // Only new sessions start providers, joining one is always allowed.
+    if (requestsById.size() >= MAX_PENDING_REQUESTS) {
+      diagnostics.recordError(LocationError.INTERNAL_ERROR);
+      error.invoke(
+        LocationUtils.buildError(LocationError.INTERNAL_ERROR, "Too many pending location requests.")
+      );
+      return;
+    }
+
+    LocationRequestSession session = new LocationRequestSession(locationOptions);
+
+    if (locationOptions.isFastFirstFix() && locationOptions.getReplayTrace() == null) {
+      addRaceProviders(session, locationOptions.isForceLocationManager());
+
+      if (session.providers.isEmpty()) {
+        diagnostics.recordError(LocationError.POSITION_UNAVAILABLE);
+        error.invoke(LocationUtils.buildError(LocationError.POSITION_UNAVAILABLE, null));
+        return;
+      }
+    } else {
+      session.providers.put(createLocationProvider(locationOptions), null);
+    }
+
+    addPendingRequest(session, requestId, locationOptions, success, error);
+
+    // Copy, a provider can finish the session synchronously from a cached location.
+    for (LocationProvider locationProvider: new ArrayList<>(session.providers.keySet())) {
+      pendingRequests.put(locationProvider, session);
+    }
+
+    for (LocationProvider locationProvider: new ArrayList<>(session.providers.keySet())) {
+      if (pendingRequests.get(locationProvider) == session) {
+        locationProvider.getCurrentLocation(locationOptions);
+      }
+    }
+  }
+
+  /**
+   * Fast first fix sources: fused provider along with every enabled
+   * LocationManager provider, all started at once.
+   */
+  private void addRaceProviders(LocationRequestSession session, boolean forceLocationManager) {
+    ReactApplicationContext context = getContext();
+
+    if (!forceLocationManager && PlayServices.getInstance(context).isAvailable()) {
+      session.providers.put(
+        new FusedLocationProvider(context, this, locationSettingsCache, workerThread.getLooper()),
+        "fused"
+      );
+    }
+
+    String[] sources = {
+      LocationManager.GPS_PROVIDER,
+      LocationManager.NETWORK_PROVIDER,
+      LocationManager.PASSIVE_PROVIDER
+    };
+
+    for (String source: sources) {
+      // Passive only sees fixes requested by the other sources.
+      if (source.equals(LocationManager.PASSIVE_PROVIDER) && session.providers.isEmpty()) {
+        break;
+      }
+
+      if (LocationUtils.isProviderEnabled(context, source)) {
+        session.providers.put(
+          new LocationManagerProvider(context, this, workerThread.getLooper(), source),
+          source
+        );
+      }
+    }
   }
 
-  private void emitEvent(String eventName, WritableMap data) {
-    getContext().getJSModule(RCTDeviceEventEmitter.class).emit(eventName, data);
+  /**
+   * Complete a session with the given location, stopping all of its sources.
+   * Best effort locations didn't satisfy the request and are marked as such.
+   */
+  private void deliverLocation(
+    LocationRequestSession session,
+    Location location,
+    @Nullable String source,
+    long locationCallbackTime,
+    boolean isBestEffort
+  ) {
+    stopSession(session);
+
+    if (session.locationOptions.isFastFirstFix() && source != null) {
+      diagnostics.recordFirstFixWin(source, SystemClock.elapsedRealtime() - session.startTime);
+    }
+
+    // Each callback needs its own data, native maps & arrays can only be consumed once.
+    for (PendingLocationRequest request: session.requests) {
+      finishRequest(request);
+      diagnostics.recordTimeToFix(SystemClock.elapsedRealtime() - request.startTime);
+      request.successCallback.invoke(buildLocationData(location, request.compactPayload, isBestEffort));
+      recordFixEmitted(locationCallbackTime);
+    }
+  }
+
+  private Object buildLocationData(Location location, boolean compactPayload, boolean isBestEffort) {
+    if (isBestEffort) {
+      WritableMap locationData = LocationUtils.locationToMap(location);
+      locationData.putBoolean("bestEffort", true);
+      return locationData;
+    }
+
+    return compactPayload
+      ? LocationUtils.locationToArray(location)
+      : LocationUtils.locationToMap(location);
+  }
+
+  private void stopSession(LocationRequestSession session) {
+    for (LocationProvider locationProvider: session.providers.keySet()) {
+      pendingRequests.remove(locationProvider);
+      locationProvider.removeLocationUpdates();
+    }
+
+    session.providers.clear();
+  }
+
+  private void removeSessionProvider(LocationRequestSession session, LocationProvider locationProvider) {
+    session.providers.remove(locationProvider);
+    pendingRequests.remove(locationProvider);
+    locationProvider.removeLocationUpdates();
+  }
+
+  private void dispatchActivityResult(int requestCode, int resultCode) {
+    if (continuousLocationProvider != null &&
+      continuousLocationProvider.onActivityResult(requestCode, resultCode)
+    ) {
+      return;
+    }
+
+    Set<LocationProvider> providers = pendingRequests.keySet();
+
+    for (LocationProvider locationProvider: providers) {
+      if (locationProvider.onActivityResult(requestCode, resultCode)) {
+        return;
+      }
+    }
+  }
+
+  private LocationProvider createLocationProvider(LocationOptions locationOptions) {
+    return locationProviderFactory.create(
+      getContext(),
+      this,
+      locationSettingsCache,
+      workerThread.getLooper(),
+      locationOptions
+    );
+  }
+
+  /**
+   * Pick the provider for the given options: a trace replay, LocationManager
+   * when forced or Play Services is missing, the fused provider otherwise.
+   */
+  static LocationProvider createLocationProvider(
+    Context context,
+    LocationChangeListener locationChangeListener,
+    LocationSettingsCache locationSettingsCache,
+    Looper looper,
+    LocationOptions locationOptions
+  ) {
+    String replayTrace = locationOptions.getReplayTrace();
+
+    if (replayTrace != null) {
+      return new ReplayLocationProvider(
+        context,
+        locationChangeListener,
+        looper,
+        replayTrace,
+        locationOptions.getReplaySpeed()
+      );
+    }
+
+    if (locationOptions.isForceLocationManager() || !PlayServices.getInstance(context).isAvailable()) {
+      return new LocationManagerProvider(context, locationChangeListener, looper);
+    }
+
+    return new FusedLocationProvider(context, locationChangeListener, locationSettingsCache, looper);
+  }
+
+  private void quitWorkerThread() {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+      workerThread.quitSafely();
+    } else {
+      workerThread.quit();
+    }
+  }
+
+  private void addPendingRequest(
+    LocationRequestSession session,
+    int requestId,
+    LocationOptions locationOptions,
+    Callback success,
+    Callback error
+  ) {
+    PendingLocationRequest request = new PendingLocationRequest(
+      requestId,
+      session,
+      success,
+      error,
+      locationOptions.isCompactPayload()
+    );
+    long timeout = locationOptions.getTimeout();
+
+    session.requests.add(request);
+    requestsById.put(requestId, request);
+
+    // Requests without a timeout (Infinity by default) still expire, in case
+    // no fix or error ever arrives. Explicit timeouts are kept as is.
+    boolean hasTimeout = timeout > 0 && timeout != Long.MAX_VALUE;
+    timerWheel.schedule(request, hasTimeout ? timeout : MAX_REQUEST_AGE);
+  }
+
+  /**
+   * Stop tracking a request which is about to be completed or dropped.
+   */
+  private void finishRequest(PendingLocationRequest request) {
+    timerWheel.cancel(request);
+
+    if (requestsById.get(request.requestId) == request) {
+      requestsById.remove(request.requestId);
+    }
+  }
+
+  /**
+   * Issue a single hardware request which satisfies all active watchers.
+   */
+  private void updateContinuousLocationProvider() {
+    LocationOptions geofenceOptions = geofenceMonitor.getLocationOptions();
+
+    if (watches.isEmpty() && geofenceOptions == null) {
+      flushLocationBuffer();
+      // JS may never read the buffer again, the next watch must be signaled.
+      isRingBufferSignalPending.set(false);
+
+      if (continuousLocationProvider != null) {
+        continuousLocationProvider.removeLocationUpdates();
+        continuousLocationProvider = null;
+        continuousLocationOptions = null;
+      }
+
+      locationFilter.setLocationOptions(null);
+      updateSmoothing();
+      adaptiveSampler.reset();
+      return;
+    }
+
+    List<LocationOptions> optionsList = new ArrayList<>();
+
+    for (LocationWatch watch: watches.values()) {
+      optionsList.add(watch.getLocationOptions());
+    }
+
+    if (geofenceOptions != null) {
+      optionsList.add(geofenceOptions);
+    }
+
+    LocationOptions locationOptions = LocationOptions.combine(optionsList);
+    updateSmoothing();
+
+    if (locationOptions.equals(continuousLocationOptions)) {
+      // New watchers must still thin at the current sampling rate.
+      applySamplingOptions(locationOptions);
+      return;
+    }
+
+    flushLocationBuffer();
+    isRingBufferSignalPending.set(false);
+
+    if (continuousLocationProvider != null && continuousLocationOptions != null && (
+      continuousLocationOptions.isForceLocationManager() != locationOptions.isForceLocationManager() ||
+      !isSameReplay(continuousLocationOptions, locationOptions)
+    )) {
+      continuousLocationProvider.removeLocationUpdates();
+      continuousLocationProvider = null;
+    }
+
+    if (continuousLocationProvider == null) {
+      continuousLocationProvider = createLocationProvider(locationOptions);
+    }
+
+    continuousLocationOptions = locationOptions;
+    continuousLocationProvider.requestLocationUpdates(applySamplingOptions(locationOptions));
+  }
+
+  /**
+   * Thin continuous updates with the options the adaptive sampler requests,
+   * otherwise updates at a faster rate get dropped by the filter & watchers
+   * using the base interval. Returns the options to request.
+   */
+  private LocationOptions applySamplingOptions(LocationOptions locationOptions) {
+    // Combined options are only adaptive if every watcher is.
+    boolean isAdaptive = locationOptions.isAdaptiveSampling();
+    LocationOptions samplingOptions = isAdaptive ? adaptiveSampler.adapt(locationOptions) : locationOptions;
+
+    locationFilter.setLocationOptions(samplingOptions);
+
+    for (LocationWatch watch: watches.values()) {
+      LocationOptions watchOptions = watch.getLocationOptions();
+      watch.setSamplingOptions(isAdaptive ? adaptiveSampler.adapt(watchOptions) : watchOptions);
+    }
+
+    return samplingOptions;
+  }
+
+  /**
+   * Smoothing only runs while a watcher asks for it, and restarts from
+   * scratch once it's enabled again.
+   */
+  private void updateSmoothing() {
+    boolean smoothing = false;
+
+    for (LocationWatch watch: watches.values()) {
+      smoothing |= watch.getLocationOptions().isSmoothing();
+    }
+
+    if (!smoothing) {
+      locationSmoother.reset();
+    }
+
+    hasSmoothingWatch = smoothing;
+  }
+
+  /**
+   * A location completes a request once it reaches the desired accuracy, and
+   * is within maxAccuracy & maximumAge for fast first fix requests.
+   */
+  private static boolean isAcceptable(LocationOptions locationOptions, Location location) {
+    float accuracy = location.getAccuracy();
+    float desiredAccuracy = locationOptions.getDesiredAccuracy();
+
+    if (desiredAccuracy > 0 && accuracy > desiredAccuracy) {
+      return false;
+    }
+
+    return !locationOptions.isFastFirstFix() || (
+      accuracy <= locationOptions.getMaxAccuracy() &&
+      LocationUtils.getLocationAge(location) < locationOptions.getMaximumAge()
+    );
+  }
+
+  private static boolean isSameReplay(LocationOptions a, LocationOptions b) {
+    String replayTrace = a.getReplayTrace();
+
+    return replayTrace == null
+      ? b.getReplayTrace() == null
+      : replayTrace.equals(b.getReplayTrace()) && a.getReplaySpeed() == b.getReplaySpeed();
+  }
+
+  /**
+   * Re-issue the continuous request when the adaptive sampler switches mode.
+   */
+  private void updateSampling(Location location) {
+    if (continuousLocationProvider == null || continuousLocationOptions == null ||
+      !continuousLocationOptions.isAdaptiveSampling() || !adaptiveSampler.update(location)
+    ) {
+      return;
+    }
+
+    LocationOptions samplingOptions = applySamplingOptions(continuousLocationOptions);
+
+    // LocationManager keeps the old registration if the best provider changes.
+    continuousLocationProvider.removeLocationUpdates();
+    continuousLocationProvider.requestLocationUpdates(samplingOptions);
+
+    WritableMap data = Arguments.createMap();
+    data.putString("mode", adaptiveSampler.getMode().name());
+    data.putDouble("speed", adaptiveSampler.getSpeed());
+    data.putString("accuracy", samplingOptions.getAccuracy().name());
+    data.putDouble("interval", samplingOptions.getInterval());
+    data.putDouble("fastestInterval", samplingOptions.getFastestInterval());
+
+    eventEmitter.emit("geolocationSamplingChange", data);
+  }
+
+  private void onWatchLocationChange(Location location) {
+    if (continuousLocationOptions == null) {
+      return;
+    }
+
+    locationCache.put(location);
+    // Fixes of getCurrentPosition may come from the cache, only the
+    // continuous request is checked against geofences.
+    geofenceMonitor.evaluate(location);
+    updateSampling(location);
+
+    if (!locationFilter.accept(location)) {
+      return;
+    }
+
+    simplifyLocation(location);
+    dispatchWatchLocation(location, false, null);
+
+    if (hasSmoothingWatch) {
+      dispatchWatchLocation(smoothLocation(location), true, null);
+    }
+  }
+
+  /**
+   * Deliver the raw or smoothed location to the watchers asking for it, once
+   * for each payload format. Locations are added to the given batch, or
+   * emitted unless buffered for maxWaitTime. Returns the number of locations
+   * added to the batch, the caller records them once it's emitted.
+   */
+  private int dispatchWatchLocation(Location location, boolean isSmoothed, @Nullable WritableArray batch) {
+    int batchedCount = 0;
+
+    for (int i = 0; i < 2; i++) {
+      boolean compactPayload = i == 1;
+      int watchIdCount = collectWatchIds(location, isSmoothed, compactPayload);
+
+      if (watchIdCount == 0) {
+        continue;
+      }
+
+      if (writeToRingBuffer(location, watchIdCount)) {
+        recordFixEmitted(callbackTime);
+        continue;
+      }
+
+      Object locationData = buildWatchLocationData(location, watchIdCount, compactPayload);
+
+      if (batch != null) {
+        pushLocationData(batch, locationData);
+        batchedCount++;
+      } else {
+        emitWatchLocationData(locationData);
+        recordFixEmitted(callbackTime);
+      }
+    }
+
+    return batchedCount;
+  }
+
+  /**
+   * Time from the provider callback until the fix was sent to JS, or queued
+   * when it's held back for maxWaitTime.
+   */
+  private void recordFixEmitted(long locationCallbackTime) {
+    diagnostics.recordFixEmitted((System.nanoTime() - locationCallbackTime) / 1000);
+  }
+
+  private void emitWatchLocationData(Object locationData) {
+    if (continuousLocationOptions == null) {
+      return;
+    }
+
+    // Providers without native batching are buffered here instead.
+    if (continuousLocationOptions.getMaxWaitTime() > 0) {
+      if (locationBuffer == null) {
+        locationBuffer = Arguments.createArray();
+        handler.postDelayed(flushRunnable, continuousLocationOptions.getMaxWaitTime());
+      }
+
+      pushLocationData(locationBuffer, locationData);
+      return;
+    }
+
+    eventEmitter.emit("geolocationDidChange", locationData);
+  }
+
+  /**
+   * Returns the smoothed location, which is only valid until the next call
+   * and must be serialized right away.
+   */
+  private Location smoothLocation(Location location) {
+    locationSmoother.smooth(location, smoothedLocation);
+    return smoothedLocation;
+  }
+
+  private void simplifyLocation(Location location) {
+    if (trackSimplifier != null) {
+      trackSimplifier.add(location.getLatitude(), location.getLongitude());
+    }
+  }
+
+  /**
+   * Collect ids of the watchers with the given smoothing & payload format,
+   * which should receive the location, into watchIdBuffer and return their
+   * count.
+   */
+  private int collectWatchIds(Location location, boolean smoothing, boolean compactPayload) {
+    int watchIdCount = 0;
+
+    for (LocationWatch watch: watches.values()) {
+      LocationOptions watchOptions = watch.getLocationOptions();
+
+      if (watchOptions.isSmoothing() != smoothing || watchOptions.isCompactPayload() != compactPayload) {
+        continue;
+      }
+
+      if (watch.accept(location)) {
+        if (watchIdCount == watchIdBuffer.length) {
+          watchIdBuffer = Arrays.copyOf(watchIdBuffer, watchIdCount * 2);
+        }
+
+        watchIdBuffer[watchIdCount++] = watch.getId();
+      }
+    }
+
+    return watchIdCount;
+  }
+
+  /**
+   * Store the location in the ring buffer if enabled, and signal JS once
+   * until it reads the buffer again.
+   */
+  private boolean writeToRingBuffer(Location location, int watchIdCount) {
+    if (continuousLocationOptions == null ||
+      !continuousLocationOptions.isUseRingBuffer() ||
+      !locationRingBuffer.write(location, watchIdBuffer, watchIdCount)
+    ) {
+      return false;
+    }
+
+    if (isRingBufferSignalPending.compareAndSet(false, true)) {
+      eventEmitter.emit("geolocationDidChange", null);
+    }
+
+    return true;
+  }
+
+  /**
+   * Build location data tagged with the ids of the watchers collected in
+   * watchIdBuffer.
+   */
+  private Object buildWatchLocationData(Location location, int watchIdCount, boolean compactPayload) {
+    // Compact locations carry the watch ids after the location fields.
+    if (compactPayload) {
+      WritableArray locationData = LocationUtils.locationToArray(location);
+
+      for (int i = 0; i < watchIdCount; i++) {
+        locationData.pushInt(watchIdBuffer[i]);
+      }
+
+      return locationData;
+    }
+
+    WritableArray watchIds = Arguments.createArray();
+
+    for (int i = 0; i < watchIdCount; i++) {
+      watchIds.pushInt(watchIdBuffer[i]);
+    }
+
+    WritableMap locationData = LocationUtils.locationToMap(location);
+    locationData.putArray("watchIds", watchIds);
+
+    return locationData;
+  }
+
+  private void pushLocationData(WritableArray array, Object locationData) {
+    if (locationData instanceof WritableArray) {
+      array.pushArray((WritableArray) locationData);
+    } else if (locationData instanceof WritableMap) {
+      array.pushMap((WritableMap) locationData);
+    }
+  }
+
+  private void flushLocationBuffer() {
+    handler.removeCallbacks(flushRunnable);
+
+    if (locationBuffer == null) {
+      return;
+    }
+
+    eventEmitter.emit("geolocationBatch", locationBuffer);
+    locationBuffer = null;
+  }
+
+  private void rejectPromise(Promise promise, LocationError error, @Nullable String message) {
+    diagnostics.recordError(error);
+    WritableMap errorData = LocationUtils.buildError(error, message);
+    promise.reject(String.valueOf(error.getValue()), errorData.getString("message"));
+  }
+
+  /**
+   * Options are parsed on the calling thread, diagnostics aren't touched.
+   */
+  private static void rejectInvalidOptions(Promise promise, IllegalArgumentException e) {
+    promise.reject(String.valueOf(LocationError.INTERNAL_ERROR.getValue()), e.getMessage());
   }
 
   private ReactApplicationContext getContext() {
     return getReactApplicationContext();
   }
 
-  private static class PendingLocationRequest {
+  /**
+   * Looper of the worker thread all module state is confined to.
+   */
+  @VisibleForTesting
+  Looper getLooper() {
+    return workerThread.getLooper();
+  }
+
+  /**
+   * Doubles as its own timeout timer, so queued requests don't allocate
+   * anything else.
+   */
+  private static class PendingLocationRequest extends TimerWheel.Timer {
+    final int requestId;
+    final LocationRequestSession session;
     final Callback successCallback;
     final Callback errorCallback;
+    final boolean compactPayload;
+    final long startTime = SystemClock.elapsedRealtime();
 
-    public PendingLocationRequest(Callback success, Callback error) {
+    public PendingLocationRequest(
+      int requestId,
+      LocationRequestSession session,
+      Callback success,
+      Callback error,
+      boolean compactPayload
+    ) {
+      this.requestId = requestId;
+      this.session = session;
       this.successCallback = success;
       this.errorCallback = error;
+      this.compactPayload = compactPayload;
+    }
+  }
+
+  /**
+   * A single provider session shared by all getCurrentPosition calls that can
+   * be satisfied by the same fix.
+   */
+  private static class LocationRequestSession {
+    final LocationOptions locationOptions;
+    final List<PendingLocationRequest> requests = new ArrayList<>();
+    // Running providers along with their source name for fast first fix.
+    final HashMap<LocationProvider, String> providers = new HashMap<>();
+    final long startTime = SystemClock.elapsedRealtime();
+    @Nullable Location bestLocation;
+    @Nullable String bestSource;
+    long bestCallbackTime;
+    boolean hasFix = false;
+
+    public LocationRequestSession(LocationOptions locationOptions) {
+      this.locationOptions = locationOptions;
+    }
+
+    /**
+     * A request can join when the session is at least as accurate, never
+     * returns a cached location older than the request allows, and handles
+     * disabled location settings the same way.
+     */
+    boolean canJoin(LocationOptions options) {
+      return options.isForceLocationManager() == locationOptions.isForceLocationManager() &&
+        options.isShowLocationDialog() == locationOptions.isShowLocationDialog() &&
+        options.isForceRequestLocation() == locationOptions.isForceRequestLocation() &&
+        options.isFastFirstFix() == locationOptions.isFastFirstFix() &&
+        options.getDesiredAccuracy() == locationOptions.getDesiredAccuracy() &&
+        locationOptions.getAccuracy().ordinal() <= options.getAccuracy().ordinal() &&
+        locationOptions.getMaximumAge() <= options.getMaximumAge() &&
+        locationOptions.getMaxAccuracy() <= options.getMaxAccuracy() &&
+        isSameReplay(options, locationOptions);
+    }
+
+    /**
+     * Whether a provider other than the passive race source is running.
+     */
+    boolean hasActiveSource() {
+      for (String source: providers.values()) {
+        if (!LocationManager.PASSIVE_PROVIDER.equals(source)) {
+          return true;
+        }
+      }
+
+      return false;
+    }
+
+    boolean isAcceptable(Location location) {
+      return RNFusedLocationModule.isAcceptable(locationOptions, location);
+    }
+
+    void offer(LocationProvider locationProvider, Location location, long callbackTime) {
+      if (bestLocation == null || location.getAccuracy() < bestLocation.getAccuracy()) {
+        bestLocation = location;
+        bestSource = providers.get(locationProvider);
+        bestCallbackTime = callbackTime;
+      }
     }
   }
 }
@@ -0,0 +1,33 @@
+package com.agontuk.RNFusedLocation;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.modules.core.DeviceEventManagerModule.RCTDeviceEventEmitter;
+
+/**
+ * Sends events through RCTDeviceEventEmitter while the React instance is
+ * alive.
+ */
+public class ReactEventEmitter implements EventEmitter {
+  private final ReactApplicationContext reactContext;
+
+  public ReactEventEmitter(ReactApplicationContext reactContext) {
+    this.reactContext = reactContext;
+  }
+
+  @Override
+  public boolean canEmit() {
+    return reactContext.hasActiveCatalystInstance();
+  }
+
+  @Override
+  public void emit(String eventName, @Nullable Object data) {
+    // Late provider callbacks can arrive while the instance is torn down.
+    if (!canEmit()) {
+      return;
+    }
+
+    reactContext.getJSModule(RCTDeviceEventEmitter.class).emit(eventName, data);
+  }
+}
@@ -0,0 +1,261 @@
+package com.agontuk.RNFusedLocation;
+
+import android.content.Context;
+import android.location.Location;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Replays a recorded GPX, NMEA or CSV trace instead of talking to the system
+ * location services. Points keep their recorded spacing divided by the replay
+ * speed, or are delivered one after another as fast as possible when the
+ * speed is 0. Replayed locations are stamped with the current time and
+ * flagged as mock locations.
+ *
+ * Only available in debug builds, and only for traces in the app's files or
+ * cache directory. Relative paths are resolved against the files directory.
+ */
+public class ReplayLocationProvider implements LocationProvider {
+  static final String PROVIDER = "replay";
+  private static final float DEFAULT_ACCURACY = 5;
+
+  @Nullable private static Method setMockMethod;
+
+  private final Context context;
+  private final LocationChangeListener locationChangeListener;
+  private final Handler handler;
+  private final String tracePath;
+  private final float speed;
+  private final Runnable replayRunnable = new Runnable() {
+    @Override
+    public void run() {
+      replayNext();
+    }
+  };
+
+  @Nullable private LocationTrace trace;
+  private int index = 0;
+  private long startUptime;
+  private long startTraceTime;
+  private boolean isSingleUpdate = false;
+  private boolean isCurrentLocation = false;
+
+  public ReplayLocationProvider(
+    Context context,
+    LocationChangeListener locationChangeListener,
+    Looper looper,
+    String tracePath,
+    float speed
+  ) {
+    this.context = context;
+    this.locationChangeListener = locationChangeListener;
+    this.handler = new Handler(looper);
+    this.tracePath = tracePath;
+    this.speed = speed;
+  }
+
+  @Override
+  public void getCurrentLocation(LocationOptions locationOptions) {
+    // Keep replaying until the module gets an accurate enough location.
+    this.isSingleUpdate = locationOptions.getDesiredAccuracy() <= 0;
+    this.isCurrentLocation = true;
+    startReplay();
+  }
+
+  @Override
+  public boolean onActivityResult(int requestCode, int resultCode) {
+    return false;
+  }
+
+  @Override
+  public void requestLocationUpdates(LocationOptions locationOptions) {
+    this.isSingleUpdate = false;
+    this.isCurrentLocation = false;
+    startReplay();
+  }
+
+  @Override
+  public void removeLocationUpdates() {
+    handler.removeCallbacks(replayRunnable);
+    isCurrentLocation = false;
+  }
+
+  /**
+   * Start or resume the replay from the next point.
+   */
+  private void startReplay() {
+    handler.removeCallbacks(replayRunnable);
+
+    if (!BuildConfig.DEBUG) {
+      locationChangeListener.onLocationError(
+        ReplayLocationProvider.this,
+        LocationError.INTERNAL_ERROR,
+        "Trace replay is only available in debug builds."
+      );
+      return;
+    }
+
+    if (trace == null) {
+      try {
+        trace = LocationTrace.load(resolveTrace(context, tracePath));
+      } catch (IOException e) {
+        locationChangeListener.onLocationError(
+          ReplayLocationProvider.this,
+          LocationError.INTERNAL_ERROR,
+          e.getMessage()
+        );
+        return;
+      }
+    }
+
+    if (index >= trace.size()) {
+      onReplayFinished();
+      return;
+    }
+
+    startUptime = SystemClock.uptimeMillis();
+    startTraceTime = trace.getTime(index);
+    handler.post(replayRunnable);
+  }
+
+  private void replayNext() {
+    if (trace == null || index >= trace.size()) {
+      return;
+    }
+
+    Location location = buildLocation(trace, index++);
+
+    // Schedule first, the listener may stop or restart the replay.
+    if (index >= trace.size()) {
+      Log.i(RNFusedLocationModule.TAG, "trace replay finished: " + tracePath);
+    } else if (!isSingleUpdate) {
+      if (speed > 0) {
+        long delay = (long) ((trace.getTime(index) - startTraceTime) / speed);
+        handler.postAtTime(replayRunnable, startUptime + delay);
+      } else {
+        handler.post(replayRunnable);
+      }
+    }
+
+    locationChangeListener.onLocationChange(ReplayLocationProvider.this, location);
+
+    // A current position request still waiting for an accurate enough
+    // location won't get one anymore.
+    if (index >= trace.size()) {
+      onReplayFinished();
+    }
+  }
+
+  private void onReplayFinished() {
+    if (!isCurrentLocation) {
+      return;
+    }
+
+    isCurrentLocation = false;
+    locationChangeListener.onLocationError(
+      ReplayLocationProvider.this,
+      LocationError.POSITION_UNAVAILABLE,
+      "Trace replay finished."
+    );
+  }
+
+  /**
+   * Resolve the trace path, rejecting anything outside of the app's files or
+   * cache directory.
+   */
+  private static File resolveTrace(Context context, String tracePath) throws IOException {
+    File filesDir = context.getFilesDir().getCanonicalFile();
+    File file = new File(tracePath);
+
+    if (!file.isAbsolute()) {
+      file = new File(filesDir, tracePath);
+    }
+
+    file = file.getCanonicalFile();
+
+    if (
+      !isInside(file, filesDir) &&
+      !isInside(file, context.getCacheDir().getCanonicalFile())
+    ) {
+      throw new IOException("Trace must be in the app's files or cache directory: " + tracePath);
+    }
+
+    return file;
+  }
+
+  private static boolean isInside(File file, File directory) {
+    for (File parent = file.getParentFile(); parent != null; parent = parent.getParentFile()) {
+      if (parent.equals(directory)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Location.setIsFromMockProvider is hidden before API 31 (setMock since),
+   * so it's called via reflection like androidx LocationCompat does.
+   */
+  private static void setMock(Location location) {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) {
+      return;
+    }
+
+    try {
+      if (setMockMethod == null) {
+        setMockMethod = Location.class.getMethod(
+          Build.VERSION.SDK_INT >= 31 ? "setMock" : "setIsFromMockProvider",
+          boolean.class
+        );
+      }
+
+      setMockMethod.invoke(location, true);
+    } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+      Log.w(RNFusedLocationModule.TAG, "Unable to flag replayed location as mock.", e);
+    }
+  }
+
+  private static Location buildLocation(LocationTrace trace, int index) {
+    double accuracy = trace.get(index, LocationTrace.ACCURACY);
+    double altitude = trace.get(index, LocationTrace.ALTITUDE);
+    double speed = trace.get(index, LocationTrace.SPEED);
+    double bearing = trace.get(index, LocationTrace.BEARING);
+
+    Location location = new Location(PROVIDER);
+    location.setLatitude(trace.get(index, LocationTrace.LATITUDE));
+    location.setLongitude(trace.get(index, LocationTrace.LONGITUDE));
+    location.setAccuracy(Double.isNaN(accuracy) ? DEFAULT_ACCURACY : (float) accuracy);
+    location.setTime(System.currentTimeMillis());
+
+    if (!Double.isNaN(altitude)) {
+      location.setAltitude(altitude);
+    }
+
+    if (!Double.isNaN(speed)) {
+      location.setSpeed((float) speed);
+    }
+
+    if (!Double.isNaN(bearing)) {
+      location.setBearing((float) bearing);
+    }
+
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+      location.setElapsedRealtimeNanos(SystemClock.elapsedRealtimeNanos());
+    }
+
+    setMock(location);
+
+    return location;
+  }
+}
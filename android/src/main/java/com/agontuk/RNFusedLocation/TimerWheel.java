@@ -0,0 +1,218 @@
+package com.agontuk.RNFusedLocation;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Hashed timer wheel running on a single handler. Timers are intrusive list
+ * nodes, so scheduling & cancelling doesn't allocate, and a single runnable
+ * is posted for the tick of the earliest pending timer instead of waking up
+ * every tick. Timers fire at most one tick late. Not thread safe, must be
+ * used from the handler's thread.
+ */
+public class TimerWheel {
+  private static final int WHEEL_SIZE = 256; /* power of two */
+  private static final int NOT_SCHEDULED = -1;
+  private static final int EXPIRING = -2;
+  private static final long NOT_TICKING = Long.MAX_VALUE;
+
+  public interface Listener {
+    void onTimerExpired(Timer timer);
+  }
+
+  public static class Timer {
+    private long deadline;
+    private long tick;
+    private int slot = NOT_SCHEDULED;
+    @Nullable private Timer next;
+    @Nullable private Timer previous;
+    @Nullable private Timer nextExpired;
+
+    public boolean isScheduled() {
+      return slot >= 0;
+    }
+  }
+
+  private final Handler handler;
+  private final long tickDuration;
+  private final Listener listener;
+  private final Timer[] slots = new Timer[WHEEL_SIZE];
+  private final Runnable tickRunnable = new Runnable() {
+    @Override
+    public void run() {
+      tick();
+    }
+  };
+
+  private long currentTick;
+  private long scheduledTick = NOT_TICKING;
+  private int size = 0;
+
+  public TimerWheel(Handler handler, long tickDuration, Listener listener) {
+    this.handler = handler;
+    this.tickDuration = tickDuration;
+    this.listener = listener;
+  }
+
+  public void schedule(Timer timer, long delay) {
+    cancel(timer);
+
+    long now = SystemClock.uptimeMillis();
+
+    if (scheduledTick == NOT_TICKING) {
+      currentTick = now / tickDuration;
+    }
+
+    timer.deadline = now + delay;
+    timer.tick = Math.max((timer.deadline + tickDuration - 1) / tickDuration, currentTick + 1);
+    int slot = (int) (timer.tick & (WHEEL_SIZE - 1));
+
+    timer.slot = slot;
+    timer.previous = null;
+    timer.next = slots[slot];
+
+    if (timer.next != null) {
+      timer.next.previous = timer;
+    }
+
+    slots[slot] = timer;
+    size++;
+    postTick(timer.tick);
+  }
+
+  public void cancel(Timer timer) {
+    if (timer.slot == EXPIRING) {
+      timer.slot = NOT_SCHEDULED;
+      return;
+    }
+
+    if (timer.slot == NOT_SCHEDULED) {
+      return;
+    }
+
+    unlink(timer);
+    timer.slot = NOT_SCHEDULED;
+
+    if (size == 0) {
+      stopTicking();
+    }
+  }
+
+  /**
+   * Cancel all timers and stop ticking.
+   */
+  public void clear() {
+    for (int i = 0; i < WHEEL_SIZE; i++) {
+      while (slots[i] != null) {
+        cancel(slots[i]);
+      }
+    }
+
+    stopTicking();
+  }
+
+  private void tick() {
+    long now = SystemClock.uptimeMillis();
+    long targetTick = now / tickDuration;
+    // Ticks since the last run, every slot is visited once at most.
+    long tickCount = Math.min(targetTick - currentTick, WHEEL_SIZE);
+    Timer expired = null;
+
+    scheduledTick = NOT_TICKING;
+
+    for (long i = 1; i <= tickCount && size > 0; i++) {
+      Timer timer = slots[(int) ((currentTick + i) & (WHEEL_SIZE - 1))];
+
+      while (timer != null) {
+        Timer next = timer.next;
+
+        // Timers with a later deadline are due in a future round.
+        if (timer.deadline <= now) {
+          unlink(timer);
+          timer.slot = EXPIRING;
+          timer.nextExpired = expired;
+          expired = timer;
+        }
+
+        timer = next;
+      }
+    }
+
+    currentTick = targetTick;
+
+    // Listeners can cancel or reschedule other expired timers, which are skipped then.
+    while (expired != null) {
+      Timer timer = expired;
+      expired = timer.nextExpired;
+      timer.nextExpired = null;
+
+      if (timer.slot == EXPIRING) {
+        timer.slot = NOT_SCHEDULED;
+        listener.onTimerExpired(timer);
+      }
+    }
+
+    if (size > 0) {
+      postTick(getNextTick());
+    }
+  }
+
+  /**
+   * Tick of the earliest pending timer. Slots are scanned from the next tick,
+   * the first one holding a timer due in this round has the earliest one,
+   * otherwise it's the earliest of the timers due in later rounds.
+   */
+  private long getNextTick() {
+    long nextTick = NOT_TICKING;
+
+    for (int i = 1; i <= WHEEL_SIZE; i++) {
+      long tick = currentTick + i;
+
+      for (Timer timer = slots[(int) (tick & (WHEEL_SIZE - 1))]; timer != null; timer = timer.next) {
+        nextTick = Math.min(nextTick, timer.tick);
+      }
+
+      if (nextTick <= tick) {
+        break;
+      }
+    }
+
+    return nextTick;
+  }
+
+  /**
+   * Run tick at the given tick, unless it's already posted for an earlier one.
+   */
+  private void postTick(long tick) {
+    if (tick >= scheduledTick) {
+      return;
+    }
+
+    handler.removeCallbacks(tickRunnable);
+    handler.postAtTime(tickRunnable, tick * tickDuration);
+    scheduledTick = tick;
+  }
+
+  private void stopTicking() {
+    handler.removeCallbacks(tickRunnable);
+    scheduledTick = NOT_TICKING;
+  }
+
+  private void unlink(Timer timer) {
+    if (timer.previous != null) {
+      timer.previous.next = timer.next;
+    } else {
+      slots[timer.slot] = timer.next;
+    }
+
+    if (timer.next != null) {
+      timer.next.previous = timer.previous;
+    }
+
+    timer.next = null;
+    timer.previous = null;
+    size--;
+  }
+}
@@ -0,0 +1,254 @@
+package com.agontuk.RNFusedLocation;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+
+import java.util.Arrays;
+
+/**
+ * Line simplification for tracks of [latitude, longitude] pairs stored in a
+ * flat array. Whole tracks are simplified with Douglas-Peucker, while the
+ * streaming mode uses a sliding window so the simplified track can be kept
+ * up to date as locations arrive. Tolerances are in meters.
+ */
+public class TrackSimplifier {
+  public static final String FORMAT_POLYLINE = "polyline";
+  public static final String FORMAT_PACKED = "packed";
+
+  private static final double METERS_PER_DEGREE = 111319.49;
+  private static final int MAX_WINDOW_SIZE = 256;
+
+  private final double toleranceSquared;
+  private final double[] window = new double[MAX_WINDOW_SIZE * 2];
+  private double[] coordinates = new double[256];
+  private int count = 0;
+  private int windowCount = 0;
+
+  public TrackSimplifier(double tolerance) {
+    this.toleranceSquared = tolerance * tolerance;
+  }
+
+  /**
+   * Add a location to the streaming track. Points are kept in the window as
+   * long as they are all within tolerance of the line from the last kept
+   * point to the newest one.
+   */
+  public void add(double latitude, double longitude) {
+    if (count == 0) {
+      append(latitude, longitude);
+      return;
+    }
+
+    if (windowCount > 0 && (windowCount == MAX_WINDOW_SIZE || !isWindowWithinTolerance(latitude, longitude))) {
+      append(window[windowCount * 2 - 2], window[windowCount * 2 - 1]);
+      windowCount = 0;
+    }
+
+    window[windowCount * 2] = latitude;
+    window[windowCount * 2 + 1] = longitude;
+    windowCount++;
+  }
+
+  /**
+   * Returns the simplified track so far, including the latest location.
+   */
+  public double[] getCoordinates() {
+    int size = count * 2;
+    double[] result = Arrays.copyOf(coordinates, windowCount > 0 ? size + 2 : size);
+
+    if (windowCount > 0) {
+      result[size] = window[windowCount * 2 - 2];
+      result[size + 1] = window[windowCount * 2 - 1];
+    }
+
+    return result;
+  }
+
+  private boolean isWindowWithinTolerance(double latitude, double longitude) {
+    double anchorLatitude = coordinates[count * 2 - 2];
+    double anchorLongitude = coordinates[count * 2 - 1];
+    double metersPerDegreeLongitude = getMetersPerDegreeLongitude(anchorLatitude);
+
+    for (int i = 0; i < windowCount; i++) {
+      double distance = getSquaredSegmentDistance(
+        window[i * 2], window[i * 2 + 1],
+        anchorLatitude, anchorLongitude,
+        latitude, longitude,
+        metersPerDegreeLongitude
+      );
+
+      if (distance > toleranceSquared) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private void append(double latitude, double longitude) {
+    if (count * 2 == coordinates.length) {
+      coordinates = Arrays.copyOf(coordinates, coordinates.length * 2);
+    }
+
+    coordinates[count * 2] = latitude;
+    coordinates[count * 2 + 1] = longitude;
+    count++;
+  }
+
+  /**
+   * Simplify a whole track with Douglas-Peucker. Returns the kept points as
+   * a new flat array, first and last points are always kept.
+   */
+  public static double[] simplify(double[] coordinates, double tolerance) {
+    int pointCount = coordinates.length / 2;
+
+    if (pointCount < 3) {
+      return Arrays.copyOf(coordinates, pointCount * 2);
+    }
+
+    double toleranceSquared = tolerance * tolerance;
+    boolean[] keep = new boolean[pointCount];
+    int[] stack = new int[64];
+    int stackSize = 0;
+    int keptCount = 2;
+
+    keep[0] = true;
+    keep[pointCount - 1] = true;
+    stack[stackSize++] = 0;
+    stack[stackSize++] = pointCount - 1;
+
+    // Iterative to handle large tracks without overflowing the call stack.
+    while (stackSize > 0) {
+      int last = stack[--stackSize];
+      int first = stack[--stackSize];
+      double firstLatitude = coordinates[first * 2];
+      double firstLongitude = coordinates[first * 2 + 1];
+      double lastLatitude = coordinates[last * 2];
+      double lastLongitude = coordinates[last * 2 + 1];
+      double metersPerDegreeLongitude = getMetersPerDegreeLongitude(firstLatitude);
+      double maxDistance = toleranceSquared;
+      int index = -1;
+
+      for (int i = first + 1; i < last; i++) {
+        double distance = getSquaredSegmentDistance(
+          coordinates[i * 2], coordinates[i * 2 + 1],
+          firstLatitude, firstLongitude,
+          lastLatitude, lastLongitude,
+          metersPerDegreeLongitude
+        );
+
+        if (distance > maxDistance) {
+          maxDistance = distance;
+          index = i;
+        }
+      }
+
+      if (index == -1) {
+        continue;
+      }
+
+      keep[index] = true;
+      keptCount++;
+
+      if (stackSize + 4 > stack.length) {
+        stack = Arrays.copyOf(stack, stack.length * 2);
+      }
+
+      stack[stackSize++] = first;
+      stack[stackSize++] = index;
+      stack[stackSize++] = index;
+      stack[stackSize++] = last;
+    }
+
+    double[] result = new double[keptCount * 2];
+    int offset = 0;
+
+    for (int i = 0; i < pointCount; i++) {
+      if (keep[i]) {
+        result[offset++] = coordinates[i * 2];
+        result[offset++] = coordinates[i * 2 + 1];
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Encode a track with Google's encoded polyline algorithm, precision 5.
+   */
+  public static String encodePolyline(double[] coordinates) {
+    StringBuilder builder = new StringBuilder(coordinates.length * 4);
+    long previousLatitude = 0;
+    long previousLongitude = 0;
+
+    for (int i = 0; i + 1 < coordinates.length; i += 2) {
+      long latitude = Math.round(coordinates[i] * 1e5);
+      long longitude = Math.round(coordinates[i + 1] * 1e5);
+
+      encodeValue(latitude - previousLatitude, builder);
+      encodeValue(longitude - previousLongitude, builder);
+      previousLatitude = latitude;
+      previousLongitude = longitude;
+    }
+
+    return builder.toString();
+  }
+
+  /**
+   * Returns the track in the requested format, either an encoded polyline
+   * string or a packed [lat, lng, lat, lng, ...] array.
+   */
+  public static Object toOutput(double[] coordinates, String format) {
+    if (FORMAT_POLYLINE.equals(format)) {
+      return encodePolyline(coordinates);
+    }
+
+    WritableArray result = Arguments.createArray();
+
+    for (double value: coordinates) {
+      result.pushDouble(value);
+    }
+
+    return result;
+  }
+
+  private static void encodeValue(long value, StringBuilder builder) {
+    long encoded = value < 0 ? ~(value << 1) : value << 1;
+
+    while (encoded >= 0x20) {
+      builder.append((char) ((0x20 | (encoded & 0x1f)) + 63));
+      encoded >>= 5;
+    }
+
+    builder.append((char) (encoded + 63));
+  }
+
+  private static double getMetersPerDegreeLongitude(double latitude) {
+    return METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+  }
+
+  /**
+   * Squared distance in meters from a point to a segment, on a local plane
+   * around the segment start.
+   */
+  private static double getSquaredSegmentDistance(
+    double latitude, double longitude,
+    double startLatitude, double startLongitude,
+    double endLatitude, double endLongitude,
+    double metersPerDegreeLongitude
+  ) {
+    double dx = (endLongitude - startLongitude) * metersPerDegreeLongitude;
+    double dy = (endLatitude - startLatitude) * METERS_PER_DEGREE;
+    double px = (longitude - startLongitude) * metersPerDegreeLongitude;
+    double py = (latitude - startLatitude) * METERS_PER_DEGREE;
+    double lengthSquared = dx * dx + dy * dy;
+
+    if (lengthSquared > 0) {
+      double t = Math.max(0, Math.min(1, (px * dx + py * dy) / lengthSquared));
+      px -= t * dx;
+      py -= t * dy;
+    }
+
+    return px * px + py * py;
+  }
+}
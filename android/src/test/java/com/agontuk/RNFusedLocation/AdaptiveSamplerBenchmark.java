@@ -0,0 +1,46 @@
+package com.agontuk.RNFusedLocation;
+
+import android.location.Location;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+public class AdaptiveSamplerBenchmark {
+  private static final int FIX_COUNT = 100000;
+  private static final double SPEED = 15; /* m/s */
+
+  @Test
+  public void update() throws Exception {
+    final Location[] locations = new Location[FIX_COUNT];
+    final AdaptiveSampler adaptiveSampler = new AdaptiveSampler();
+
+    // One fix per second heading north, ~1.1e5 m per degree of latitude.
+    for (int i = 0; i < FIX_COUNT; i++) {
+      Location location = new Location(FakeLocationProvider.PROVIDER);
+      location.setLatitude(10 + i * SPEED / 111195);
+      location.setLongitude(10);
+      location.setAccuracy(5);
+      location.setTime(i * 1000L);
+      location.setElapsedRealtimeNanos(i * 1000000000L);
+      locations[i] = location;
+    }
+
+    Benchmark.measure("AdaptiveSampler.update", FIX_COUNT, new Benchmark.Round() {
+      @Override
+      public void run() {
+        adaptiveSampler.reset();
+
+        for (Location location: locations) {
+          adaptiveSampler.update(location);
+        }
+      }
+    });
+
+    assertEquals(AdaptiveSampler.Mode.fast, adaptiveSampler.getMode());
+    assertEquals(SPEED, adaptiveSampler.getSpeed(), 1);
+  }
+}
@@ -0,0 +1,126 @@
+package com.agontuk.RNFusedLocation;
+
+import androidx.annotation.Nullable;
+
+import com.sun.management.ThreadMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+/**
+ * JUnit timed benchmarks: a few warm up rounds, then the best of the measured
+ * rounds is reported along with the throughput & the bytes allocated by the
+ * calling thread. Results must be stored in sink so the JIT can't drop the
+ * measured work.
+ */
+public final class Benchmark {
+  private static final int WARMUP_ROUNDS = 3;
+  private static final int ROUNDS = 5;
+
+  @Nullable private static final ThreadMXBean threadMXBean = getThreadMXBean();
+
+  public static volatile Object sink;
+
+  public interface Round {
+    void run() throws Exception;
+  }
+
+  private Benchmark() {}
+
+  /**
+   * Time a round doing the given number of operations, returns nanoseconds
+   * per operation.
+   */
+  public static double measure(String name, long operations, Round round) throws Exception {
+    return measure(name, operations, null, round);
+  }
+
+  /**
+   * Same as above, with a set up run before every round that isn't timed,
+   * for rounds consuming their input.
+   */
+  public static double measure(
+    String name,
+    long operations,
+    @Nullable Round setUp,
+    Round round
+  ) throws Exception {
+    for (int i = 0; i < WARMUP_ROUNDS; i++) {
+      if (setUp != null) {
+        setUp.run();
+      }
+
+      round.run();
+    }
+
+    long best = Long.MAX_VALUE;
+    long allocated = Long.MAX_VALUE;
+
+    for (int i = 0; i < ROUNDS; i++) {
+      if (setUp != null) {
+        setUp.run();
+      }
+
+      long startAllocated = getAllocatedBytes();
+      long start = System.nanoTime();
+      round.run();
+      best = Math.min(best, System.nanoTime() - start);
+      allocated = Math.min(allocated, getAllocatedBytes() - startAllocated);
+    }
+
+    double nanosPerOperation = (double) best / operations;
+    double operationsPerSecond = 1e9 / nanosPerOperation;
+
+    if (threadMXBean == null) {
+      System.out.println(String.format(
+        Locale.US,
+        "%s: %.1f ns/op, %.0f ops/s, %.3f ms/round",
+        name,
+        nanosPerOperation,
+        operationsPerSecond,
+        best / 1e6
+      ));
+    } else {
+      double bytesPerOperation = (double) allocated / operations;
+      System.out.println(String.format(
+        Locale.US,
+        "%s: %.1f ns/op, %.0f ops/s, %.1f B/op, %.1f MB/s allocated, %.3f ms/round",
+        name,
+        nanosPerOperation,
+        operationsPerSecond,
+        bytesPerOperation,
+        bytesPerOperation * operationsPerSecond / 1e6,
+        best / 1e6
+      ));
+    }
+
+    return nanosPerOperation;
+  }
+
+  /**
+   * Allocation counter of the HotSpot thread bean, null on JVMs without one.
+   */
+  @Nullable
+  private static ThreadMXBean getThreadMXBean() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+    if (!(bean instanceof ThreadMXBean)) {
+      return null;
+    }
+
+    ThreadMXBean allocationBean = (ThreadMXBean) bean;
+
+    if (!allocationBean.isThreadAllocatedMemorySupported()) {
+      return null;
+    }
+
+    allocationBean.setThreadAllocatedMemoryEnabled(true);
+    return allocationBean;
+  }
+
+  private static long getAllocatedBytes() {
+    return threadMXBean != null
+      ? threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId())
+      : 0;
+  }
+}
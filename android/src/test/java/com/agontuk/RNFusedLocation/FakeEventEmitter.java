@@ -0,0 +1,76 @@
+package com.agontuk.RNFusedLocation;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records emitted events instead of sending them to JS. Thread safe, events
+ * are emitted from the module's worker thread.
+ */
+public class FakeEventEmitter implements EventEmitter {
+  private final List<String> eventNames = new ArrayList<>();
+  private final List<Object> eventData = new ArrayList<>();
+  private final List<Thread> eventThreads = new ArrayList<>();
+  private volatile boolean canEmit = true;
+
+  public void setCanEmit(boolean canEmit) {
+    this.canEmit = canEmit;
+  }
+
+  @Override
+  public boolean canEmit() {
+    return canEmit;
+  }
+
+  @Override
+  public synchronized void emit(String eventName, @Nullable Object data) {
+    if (!canEmit) {
+      return;
+    }
+
+    eventNames.add(eventName);
+    eventData.add(data);
+    eventThreads.add(Thread.currentThread());
+  }
+
+  public synchronized int count(String eventName) {
+    int count = 0;
+
+    for (String name: eventNames) {
+      if (name.equals(eventName)) {
+        count++;
+      }
+    }
+
+    return count;
+  }
+
+  /**
+   * Data of the last event with the given name, null when there's none.
+   */
+  @Nullable
+  public synchronized Object getLast(String eventName) {
+    for (int i = eventNames.size() - 1; i >= 0; i--) {
+      if (eventNames.get(i).equals(eventName)) {
+        return eventData.get(i);
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Threads events were emitted from, in order.
+   */
+  public synchronized List<Thread> getThreads() {
+    return new ArrayList<>(eventThreads);
+  }
+
+  public synchronized void clear() {
+    eventNames.clear();
+    eventData.clear();
+    eventThreads.clear();
+  }
+}
@@ -0,0 +1,149 @@
+package com.agontuk.RNFusedLocation;
+
+import android.content.Context;
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Provider driven by the test. Records what the module asks for, and
+ * delivers locations or errors on its looper like the real providers.
+ */
+public class FakeLocationProvider implements LocationProvider {
+  public static final String PROVIDER = "fake";
+
+  private final LocationChangeListener locationChangeListener;
+  private final Handler handler;
+
+  @Nullable private volatile LocationOptions locationOptions;
+  private volatile boolean isActive = false;
+  private volatile boolean isContinuous = false;
+  private volatile int removeCount = 0;
+
+  public FakeLocationProvider(LocationChangeListener locationChangeListener, Looper looper) {
+    this.locationChangeListener = locationChangeListener;
+    this.handler = new Handler(looper);
+  }
+
+  @Override
+  public void getCurrentLocation(LocationOptions locationOptions) {
+    this.locationOptions = locationOptions;
+    this.isActive = true;
+    this.isContinuous = false;
+  }
+
+  @Override
+  public boolean onActivityResult(int requestCode, int resultCode) {
+    return false;
+  }
+
+  @Override
+  public void requestLocationUpdates(LocationOptions locationOptions) {
+    this.locationOptions = locationOptions;
+    this.isActive = true;
+    this.isContinuous = true;
+  }
+
+  @Override
+  public void removeLocationUpdates() {
+    isActive = false;
+    removeCount++;
+  }
+
+  @Nullable
+  public LocationOptions getLocationOptions() {
+    return locationOptions;
+  }
+
+  public boolean isActive() {
+    return isActive;
+  }
+
+  public boolean isContinuous() {
+    return isContinuous;
+  }
+
+  public int getRemoveCount() {
+    return removeCount;
+  }
+
+  public void deliver(final Location location) {
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        locationChangeListener.onLocationChange(FakeLocationProvider.this, location);
+      }
+    });
+  }
+
+  public void fail(final LocationError error) {
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        locationChangeListener.onLocationError(FakeLocationProvider.this, error, null);
+      }
+    });
+  }
+
+  public static Location createLocation(double latitude, double longitude, float accuracy) {
+    Location location = new Location(PROVIDER);
+    location.setLatitude(latitude);
+    location.setLongitude(longitude);
+    location.setAccuracy(accuracy);
+    location.setTime(System.currentTimeMillis());
+    location.setElapsedRealtimeNanos(SystemClock.elapsedRealtimeNanos());
+
+    return location;
+  }
+
+  /**
+   * Creates fake providers for every request and keeps them until cleared.
+   */
+  public static class Factory implements LocationProviderFactory {
+    private final List<FakeLocationProvider> providers = new ArrayList<>();
+
+    @Override
+    public synchronized LocationProvider create(
+      Context context,
+      LocationChangeListener locationChangeListener,
+      LocationSettingsCache locationSettingsCache,
+      Looper looper,
+      LocationOptions locationOptions
+    ) {
+      FakeLocationProvider provider = new FakeLocationProvider(locationChangeListener, looper);
+      providers.add(provider);
+
+      return provider;
+    }
+
+    public synchronized List<FakeLocationProvider> getProviders() {
+      return new ArrayList<>(providers);
+    }
+
+    public synchronized FakeLocationProvider getLast() {
+      return providers.get(providers.size() - 1);
+    }
+
+    public synchronized int getActiveCount() {
+      int count = 0;
+
+      for (FakeLocationProvider provider: providers) {
+        if (provider.isActive()) {
+          count++;
+        }
+      }
+
+      return count;
+    }
+
+    public synchronized void clear() {
+      providers.clear();
+    }
+  }
+}
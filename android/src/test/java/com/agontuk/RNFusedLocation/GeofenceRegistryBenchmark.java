@@ -0,0 +1,93 @@
+package com.agontuk.RNFusedLocation;
+
+import android.location.Location;
+
+import com.facebook.react.bridge.JavaOnlyArray;
+import com.facebook.react.bridge.JavaOnlyMap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class GeofenceRegistryBenchmark {
+  private static final int GEOFENCE_COUNT = 10000;
+  private static final int FIX_COUNT = 100000;
+  private static final double MAX_NANOS_PER_FIX = 1000000; /* 1ms */
+
+  /**
+   * Circles of 50-300m & ~200m squares, alternating, spread around the
+   * start of the benchmark track.
+   */
+  private static JavaOnlyArray createGeofences() {
+    Random random = new Random(1);
+    JavaOnlyArray geofences = new JavaOnlyArray();
+
+    for (int i = 0; i < GEOFENCE_COUNT; i++) {
+      double latitude = 52.52 + (random.nextDouble() - 0.5) * 0.3;
+      double longitude = 13.405 + (random.nextDouble() - 0.5) * 0.5;
+      JavaOnlyMap geofence = new JavaOnlyMap();
+      geofence.putString("id", String.valueOf(i));
+
+      if (i % 2 == 0) {
+        geofence.putDouble("latitude", latitude);
+        geofence.putDouble("longitude", longitude);
+        geofence.putDouble("radius", 50 + random.nextDouble() * 250);
+      } else {
+        geofence.putArray("polygon", JavaOnlyArray.of(
+          latitude, longitude,
+          latitude + 0.0018, longitude,
+          latitude + 0.0018, longitude + 0.003,
+          latitude, longitude + 0.003
+        ));
+      }
+
+      geofences.pushMap(geofence);
+    }
+
+    return geofences;
+  }
+
+  @Test
+  public void evaluate() throws Exception {
+    double[] track = TrackSimplifierBenchmark.createTrack(FIX_COUNT, 3);
+    final Location[] locations = new Location[FIX_COUNT];
+    final int[] transitions = new int[GeofenceTransition.values().length];
+    final JavaOnlyArray geofences = createGeofences();
+
+    for (int i = 0; i < FIX_COUNT; i++) {
+      locations[i] = FakeLocationProvider.createLocation(track[i * 2], track[i * 2 + 1], 5);
+    }
+
+    final GeofenceRegistry geofenceRegistry = new GeofenceRegistry(new GeofenceListener() {
+      @Override
+      public void onGeofenceTransition(GeofenceTransition transition, String geofenceId, Location location) {
+        transitions[transition.ordinal()]++;
+      }
+    });
+
+    Benchmark.measure("GeofenceRegistry.addAll " + GEOFENCE_COUNT, GEOFENCE_COUNT, new Benchmark.Round() {
+      @Override
+      public void run() {
+        geofenceRegistry.clear();
+        geofenceRegistry.addAll(geofences);
+      }
+    });
+    double nanosPerFix = Benchmark.measure("GeofenceRegistry.evaluate " + GEOFENCE_COUNT, FIX_COUNT, new Benchmark.Round() {
+      @Override
+      public void run() {
+        for (Location location: locations) {
+          geofenceRegistry.evaluate(location);
+        }
+      }
+    });
+
+    assertTrue(transitions[GeofenceTransition.ENTER.ordinal()] > 0);
+    assertTrue(transitions[GeofenceTransition.EXIT.ordinal()] <= transitions[GeofenceTransition.ENTER.ordinal()]);
+    assertTrue(nanosPerFix + " ns per fix", nanosPerFix < MAX_NANOS_PER_FIX);
+  }
+}
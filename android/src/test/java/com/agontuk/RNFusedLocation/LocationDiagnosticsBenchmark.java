@@ -0,0 +1,109 @@
+package com.agontuk.RNFusedLocation;
+
+import com.facebook.react.bridge.ReadableMap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class LocationDiagnosticsBenchmark {
+  private static final int VALUE_COUNT = 1000000;
+  private static final int THREAD_COUNT = 4;
+
+  private static long[] createValues(int count) {
+    Random random = new Random(1);
+    long[] values = new long[count];
+
+    // Mostly sub second latencies with a long tail.
+    for (int i = 0; i < count; i++) {
+      values[i] = (long) Math.abs(random.nextGaussian() * 200) + (random.nextInt(100) == 0 ? 30000 : 0);
+    }
+
+    return values;
+  }
+
+  @Test
+  public void record() throws Exception {
+    final long[] values = createValues(VALUE_COUNT);
+    final LocationDiagnostics.Histogram histogram = new LocationDiagnostics.Histogram();
+
+    Benchmark.measure("Histogram.record", VALUE_COUNT, new Benchmark.Round() {
+      @Override
+      public void run() {
+        for (long value: values) {
+          histogram.record(value);
+        }
+      }
+    });
+
+    ReadableMap map = histogram.toMap();
+
+    // Warm up & measured rounds all record into the same histogram.
+    assertEquals(0, (long) map.getDouble("count") % VALUE_COUNT);
+    assertTrue(map.getDouble("p50") <= map.getDouble("p90"));
+    assertTrue(map.getDouble("p90") <= map.getDouble("p99"));
+    assertTrue(map.getDouble("p99") <= map.getDouble("max"));
+  }
+
+  @Test
+  public void recordConcurrently() throws Exception {
+    final long[] values = createValues(VALUE_COUNT / THREAD_COUNT);
+    final LocationDiagnostics.Histogram histogram = new LocationDiagnostics.Histogram();
+    final Thread[] threads = new Thread[THREAD_COUNT];
+
+    Benchmark.measure("Histogram.record " + THREAD_COUNT + " threads", VALUE_COUNT, new Benchmark.Round() {
+      @Override
+      public void run() throws InterruptedException {
+        for (int i = 0; i < THREAD_COUNT; i++) {
+          threads[i] = new Thread(new Runnable() {
+            @Override
+            public void run() {
+              for (long value: values) {
+                histogram.record(value);
+              }
+            }
+          });
+          threads[i].start();
+        }
+
+        for (Thread thread: threads) {
+          thread.join();
+        }
+      }
+    });
+
+    // No update may be lost.
+    assertEquals(0, (long) histogram.toMap().getDouble("count") % VALUE_COUNT);
+  }
+
+  @Test
+  public void toMap() throws Exception {
+    final LocationDiagnostics diagnostics = new LocationDiagnostics();
+
+    for (long value: createValues(10000)) {
+      diagnostics.recordTimeToFix(value);
+      diagnostics.recordFixEmitted(value);
+      diagnostics.recordFirstFixWin("gps", value);
+    }
+
+    Benchmark.measure("LocationDiagnostics.toMap", 1000, new Benchmark.Round() {
+      @Override
+      public void run() {
+        for (int i = 0; i < 1000; i++) {
+          Benchmark.sink = diagnostics.toMap();
+        }
+      }
+    });
+
+    ReadableMap map = diagnostics.toMap();
+
+    assertEquals(10000, map.getMap("timeToFix").getDouble("count"), 0);
+    assertEquals(10000, map.getMap("firstFixWins").getMap("gps").getDouble("count"), 0);
+  }
+}
@@ -0,0 +1,109 @@
+package com.agontuk.RNFusedLocation;
+
+import android.location.Location;
+import android.location.LocationManager;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.nio.charset.Charset;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Map vs compact array position payloads. Sizes are measured as JSON, which
+ * is what the bridge sends to JS. Times are for the JVM Java only collections
+ * standing in for the native ones, so they only show the building cost.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class LocationSerializationBenchmark {
+  private static final int FIX_COUNT = 100000;
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static Location[] createLocations() {
+    Location[] locations = new Location[FIX_COUNT];
+
+    for (int i = 0; i < FIX_COUNT; i++) {
+      Location location = FakeLocationProvider.createLocation(52.52 + i * 1e-6, 13.405 + i * 1e-6, 4.5f);
+      location.setProvider(LocationManager.GPS_PROVIDER);
+      location.setAltitude(35.2);
+      location.setBearing(90.5f);
+      location.setSpeed(1.4f);
+      locations[i] = location;
+    }
+
+    return locations;
+  }
+
+  private static Object toJson(Object value) throws JSONException {
+    if (value instanceof ReadableMap) {
+      JSONObject json = new JSONObject();
+
+      for (Map.Entry<String, Object> entry: ((ReadableMap) value).toHashMap().entrySet()) {
+        json.put(entry.getKey(), toJson(entry.getValue()));
+      }
+
+      return json;
+    }
+
+    if (value instanceof ReadableArray) {
+      JSONArray json = new JSONArray();
+
+      for (Object item: ((ReadableArray) value).toArrayList()) {
+        json.put(toJson(item));
+      }
+
+      return json;
+    }
+
+    return value == null ? JSONObject.NULL : value;
+  }
+
+  @Test
+  public void serialize() throws Exception {
+    final Location[] locations = createLocations();
+
+    double mapTime = Benchmark.measure("LocationUtils.locationToMap", FIX_COUNT, new Benchmark.Round() {
+      @Override
+      public void run() {
+        for (Location location: locations) {
+          Benchmark.sink = LocationUtils.locationToMap(location);
+        }
+      }
+    });
+    double arrayTime = Benchmark.measure("LocationUtils.locationToArray", FIX_COUNT, new Benchmark.Round() {
+      @Override
+      public void run() {
+        for (Location location: locations) {
+          Benchmark.sink = LocationUtils.locationToArray(location);
+        }
+      }
+    });
+
+    ReadableMap map = LocationUtils.locationToMap(locations[0]);
+    ReadableArray array = LocationUtils.locationToArray(locations[0]);
+    int mapSize = toJson(map).toString().getBytes(UTF_8).length;
+    int arraySize = toJson(array).toString().getBytes(UTF_8).length;
+
+    System.out.println(String.format(
+      "payload: map %d bytes, array %d bytes, map/array time %.1fx",
+      mapSize,
+      arraySize,
+      mapTime / arrayTime
+    ));
+
+    assertEquals(LocationUtils.COMPACT_LOCATION_SIZE, array.size());
+    // Well known providers are sent as a code instead of their name.
+    assertEquals(1, array.getInt(8));
+    assertTrue(arraySize < mapSize / 2);
+  }
+}
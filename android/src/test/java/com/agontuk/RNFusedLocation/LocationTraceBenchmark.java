@@ -0,0 +1,147 @@
+package com.agontuk.RNFusedLocation;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+public class LocationTraceBenchmark {
+  private static final int POINT_COUNT = 50000;
+  private static final long START_TIME = 1577836800000L; /* 2020-01-01T00:00:00Z */
+  private static final double START_LATITUDE = 52.52;
+  private static final double START_LONGITUDE = 13.405;
+  private static final double STEP = 1e-5;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private long lastModified = START_TIME;
+
+  @Test
+  public void parseCsv() throws Exception {
+    File file = folder.newFile("trace.csv");
+    Writer writer = new FileWriter(file);
+
+    try {
+      writer.write("time,latitude,longitude,accuracy,altitude,speed,heading\n");
+
+      for (int i = 0; i < POINT_COUNT; i++) {
+        writer.write(String.format(
+          Locale.US,
+          "%d,%.6f,%.6f,5,35,1.1,90\n",
+          START_TIME + i * 1000L,
+          START_LATITUDE + i * STEP,
+          START_LONGITUDE
+        ));
+      }
+    } finally {
+      writer.close();
+    }
+
+    measure("LocationTrace csv", file);
+  }
+
+  @Test
+  public void parseNmea() throws Exception {
+    File file = folder.newFile("trace.nmea");
+    Writer writer = new FileWriter(file);
+
+    try {
+      for (int i = 0; i < POINT_COUNT; i++) {
+        String time = String.format(Locale.US, "%02d%02d%02d.00", i / 3600 % 24, i / 60 % 60, i % 60);
+        double latitude = START_LATITUDE + i * STEP;
+        String nmeaLatitude = String.format(
+          Locale.US,
+          "%02d%09.6f",
+          (int) latitude,
+          (latitude - (int) latitude) * 60
+        );
+        String nmeaLongitude = String.format(
+          Locale.US,
+          "%03d%09.6f",
+          (int) START_LONGITUDE,
+          (START_LONGITUDE - (int) START_LONGITUDE) * 60
+        );
+
+        writeNmea(writer, "GPGGA," + time + "," + nmeaLatitude + ",N," + nmeaLongitude + ",E,1,08,0.9,35.0,M,,M,,");
+        writeNmea(writer, "GPRMC," + time + ",A," + nmeaLatitude + ",N," + nmeaLongitude + ",E,2.1,90.0,010120,,,A");
+      }
+    } finally {
+      writer.close();
+    }
+
+    measure("LocationTrace nmea", file);
+  }
+
+  @Test
+  public void parseGpx() throws Exception {
+    File file = folder.newFile("trace.gpx");
+    Writer writer = new FileWriter(file);
+
+    try {
+      writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+      writer.write("<gpx version=\"1.1\" xmlns=\"http://www.topografix.com/GPX/1/1\"><trk><trkseg>\n");
+
+      for (int i = 0; i < POINT_COUNT; i++) {
+        writer.write(String.format(
+          Locale.US,
+          "<trkpt lat=\"%.6f\" lon=\"%.6f\"><ele>35.0</ele><time>2020-01-01T%02d:%02d:%02dZ</time></trkpt>\n",
+          START_LATITUDE + i * STEP,
+          START_LONGITUDE,
+          i / 3600 % 24,
+          i / 60 % 60,
+          i % 60
+        ));
+      }
+
+      writer.write("</trkseg></trk></gpx>\n");
+    } finally {
+      writer.close();
+    }
+
+    measure("LocationTrace gpx", file);
+  }
+
+  private void measure(String name, final File file) throws Exception {
+    Benchmark.measure(name, POINT_COUNT, new Benchmark.Round() {
+      @Override
+      public void run() throws IOException {
+        // A new modification time skips the trace cache.
+        lastModified += 1000;
+        file.setLastModified(lastModified);
+        Benchmark.sink = LocationTrace.load(file);
+      }
+    });
+
+    LocationTrace trace = LocationTrace.load(file);
+
+    assertEquals(POINT_COUNT, trace.size());
+    assertEquals(START_LATITUDE, trace.get(0, LocationTrace.LATITUDE), 1e-6);
+    assertEquals(START_LONGITUDE, trace.get(0, LocationTrace.LONGITUDE), 1e-6);
+    assertEquals(
+      START_LATITUDE + (POINT_COUNT - 1) * STEP,
+      trace.get(POINT_COUNT - 1, LocationTrace.LATITUDE),
+      1e-6
+    );
+  }
+
+  private static void writeNmea(Writer writer, String sentence) throws IOException {
+    int checksum = 0;
+
+    for (int i = 0; i < sentence.length(); i++) {
+      checksum ^= sentence.charAt(i);
+    }
+
+    writer.write(String.format(Locale.US, "$%s*%02X\n", sentence, checksum));
+  }
+}
@@ -0,0 +1,56 @@
+package com.agontuk.RNFusedLocation;
+
+import android.content.Context;
+
+import com.google.android.gms.location.LocationServices;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Play Services setup done for every request, resolved each time as
+ * providers used to vs shared through PlayServices.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PlayServicesBenchmark {
+  private static final int REQUEST_COUNT = 10000;
+
+  @Test
+  public void setupPerRequest() throws Exception {
+    final Context context = RuntimeEnvironment.getApplication();
+
+    Benchmark.measure("setup per request, resolved", REQUEST_COUNT, new Benchmark.Round() {
+      @Override
+      public void run() {
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+          Benchmark.sink = LocationUtils.isGooglePlayServicesAvailable(context);
+          Benchmark.sink = LocationServices.getFusedLocationProviderClient(context);
+          Benchmark.sink = LocationServices.getSettingsClient(context);
+        }
+      }
+    });
+    Benchmark.measure("setup per request, shared", REQUEST_COUNT, new Benchmark.Round() {
+      @Override
+      public void run() {
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+          PlayServices playServices = PlayServices.getInstance(context);
+          Benchmark.sink = playServices.isAvailable();
+          Benchmark.sink = playServices.getFusedLocationProviderClient();
+          Benchmark.sink = playServices.getSettingsClient();
+        }
+      }
+    });
+
+    PlayServices playServices = PlayServices.getInstance(context);
+
+    assertSame(playServices, PlayServices.getInstance(context));
+    assertNotNull(playServices.getFusedLocationProviderClient());
+    assertSame(playServices.getFusedLocationProviderClient(), playServices.getFusedLocationProviderClient());
+    assertSame(playServices.getSettingsClient(), playServices.getSettingsClient());
+  }
+}
@@ -0,0 +1,202 @@
+package com.agontuk.RNFusedLocation;
+
+import android.Manifest;
+import android.app.Application;
+
+import com.facebook.react.bridge.JavaOnlyMap;
+import com.facebook.react.bridge.ReactApplicationContext;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Drives mixed request, watch, timeout & cancel cycles through the module and
+ * checks that nothing they create outlives them.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class RNFusedLocationModuleSoakTest {
+  private static final int CYCLES = 200000;
+  private static final int CHECK_INTERVAL = 10000;
+  private static final long TIMEOUT = 100;
+  private static final long TIMER_TICK = 50;
+  // Providers & callbacks of the last cycle may still be referenced by locals.
+  private static final int MAX_RETAINED = 2;
+  private static final long MAX_HEAP_GROWTH_PER_CYCLE = 64; /* bytes */
+
+  private final List<WeakReference<Object>> references = new ArrayList<>();
+  private FakeEventEmitter eventEmitter;
+  private FakeLocationProvider.Factory providerFactory;
+  private RNFusedLocationModule module;
+  private ShadowLooper looper;
+
+  @Before
+  public void setUp() {
+    Application application = RuntimeEnvironment.getApplication();
+    shadowOf(application).grantPermissions(Manifest.permission.ACCESS_FINE_LOCATION);
+
+    eventEmitter = new FakeEventEmitter();
+    providerFactory = new FakeLocationProvider.Factory();
+    module = new RNFusedLocationModule(
+      new ReactApplicationContext(application),
+      eventEmitter,
+      providerFactory
+    );
+    looper = shadowOf(module.getLooper());
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    RNFusedLocationModuleTest.destroy(module);
+  }
+
+  @Test
+  public void cyclesReleaseProvidersAndCallbacks() {
+    long startHeap = 0;
+    int success = 0;
+    int errors = 0;
+
+    for (int cycle = 0; cycle < CYCLES; cycle++) {
+      RNFusedLocationModuleTest.RecordingCallback successCallback = new RNFusedLocationModuleTest.RecordingCallback();
+      RNFusedLocationModuleTest.RecordingCallback errorCallback = new RNFusedLocationModuleTest.RecordingCallback();
+      references.add(new WeakReference<Object>(successCallback));
+      references.add(new WeakReference<Object>(errorCallback));
+
+      runCycle(cycle, successCallback, errorCallback);
+      success += successCallback.getCount();
+      errors += errorCallback.getCount();
+
+      if ((cycle + 1) % CHECK_INTERVAL == 0) {
+        // Let pending timer ticks run out before checking.
+        looper.idleFor(TIMER_TICK * 2, TimeUnit.MILLISECONDS);
+
+        assertEquals(0, providerFactory.getActiveCount());
+        // Nothing may be scheduled anymore, ZERO stands for an empty queue.
+        assertEquals(Duration.ZERO, looper.getNextScheduledTaskTime());
+
+        for (FakeLocationProvider provider: providerFactory.getProviders()) {
+          references.add(new WeakReference<Object>(provider));
+        }
+
+        providerFactory.clear();
+        eventEmitter.clear();
+
+        long heap = getUsedHeap();
+        int retained = countRetained();
+
+        assertTrue("retained " + retained + " after " + (cycle + 1) + " cycles", retained <= MAX_RETAINED);
+
+        if (startHeap == 0) {
+          startHeap = heap;
+        } else {
+          System.out.println(String.format(
+            Locale.US,
+            "soak %d cycles: %d retained, heap growth %.1f bytes/cycle",
+            cycle + 1,
+            retained,
+            (double) (heap - startHeap) / (cycle + 1 - CHECK_INTERVAL)
+          ));
+        }
+      }
+    }
+
+    long heapGrowth = getUsedHeap() - startHeap;
+
+    // Getting a fix & observing succeed, timeouts fail, cancelled requests don't call back.
+    assertEquals(CYCLES / 2, success);
+    assertEquals(CYCLES / 4, errors);
+    assertTrue(
+      "heap grew by " + heapGrowth + " bytes",
+      heapGrowth < MAX_HEAP_GROWTH_PER_CYCLE * (CYCLES - CHECK_INTERVAL)
+    );
+  }
+
+  private void runCycle(
+    int cycle,
+    RNFusedLocationModuleTest.RecordingCallback successCallback,
+    RNFusedLocationModuleTest.RecordingCallback errorCallback
+  ) {
+    JavaOnlyMap options = RNFusedLocationModuleTest.createOptions();
+
+    switch (cycle % 4) {
+      case 0:
+        module.getCurrentPosition(cycle, options, successCallback, errorCallback);
+        looper.idle();
+        providerFactory.getLast().deliver(FakeLocationProvider.createLocation(52.52, 13.405, 5));
+        looper.idle();
+        break;
+
+      case 1:
+        options.putDouble("timeout", TIMEOUT);
+        module.getCurrentPosition(cycle, options, successCallback, errorCallback);
+        looper.idleFor(TIMEOUT + TIMER_TICK, TimeUnit.MILLISECONDS);
+        break;
+
+      case 2:
+        module.startObserving(options);
+        looper.idle();
+        providerFactory.getLast().deliver(FakeLocationProvider.createLocation(52.52, 13.405, 5));
+        looper.idle();
+        module.stopObserving();
+        looper.idle();
+
+        if (eventEmitter.count("geolocationDidChange") > 0) {
+          successCallback.invoke();
+          eventEmitter.clear();
+        }
+        break;
+
+      default:
+        module.getCurrentPosition(cycle, options, successCallback, errorCallback);
+        looper.idle();
+        module.cancel(cycle);
+        looper.idle();
+        break;
+    }
+  }
+
+  private int countRetained() {
+    collectGarbage();
+
+    int retained = 0;
+
+    for (WeakReference<Object> reference: references) {
+      if (reference.get() != null) {
+        retained++;
+      }
+    }
+
+    references.clear();
+
+    return retained;
+  }
+
+  private static long getUsedHeap() {
+    collectGarbage();
+
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static void collectGarbage() {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+      System.runFinalization();
+    }
+  }
+}
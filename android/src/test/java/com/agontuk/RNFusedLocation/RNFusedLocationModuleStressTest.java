@@ -0,0 +1,214 @@
+package com.agontuk.RNFusedLocation;
+
+import android.Manifest;
+import android.app.Application;
+
+import com.facebook.react.bridge.Callback;
+import com.facebook.react.bridge.JavaOnlyMap;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReadableMap;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Requests, cancels & teardown hammered from several threads, like bursts of
+ * JS calls arriving while providers deliver fixes on the worker thread.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class RNFusedLocationModuleStressTest {
+  private static final int THREAD_COUNT = 8;
+  private static final int REQUESTS_PER_THREAD = 2000;
+  private static final int MAX_PENDING_REQUESTS = 128;
+
+  private FakeEventEmitter eventEmitter;
+  private FakeLocationProvider.Factory providerFactory;
+  private RNFusedLocationModule module;
+  private ShadowLooper looper;
+
+  @Before
+  public void setUp() {
+    Application application = RuntimeEnvironment.getApplication();
+    shadowOf(application).grantPermissions(Manifest.permission.ACCESS_FINE_LOCATION);
+
+    eventEmitter = new FakeEventEmitter();
+    providerFactory = new FakeLocationProvider.Factory();
+    module = new RNFusedLocationModule(
+      new ReactApplicationContext(application),
+      eventEmitter,
+      providerFactory
+    );
+    looper = shadowOf(module.getLooper());
+  }
+
+  @Test
+  public void concurrentRequestsCompleteExactlyOnce() throws Exception {
+    final int requestCount = THREAD_COUNT * REQUESTS_PER_THREAD;
+    final RNFusedLocationModuleTest.RecordingCallback[] successCallbacks =
+      new RNFusedLocationModuleTest.RecordingCallback[requestCount];
+    final RNFusedLocationModuleTest.RecordingCallback[] errorCallbacks =
+      new RNFusedLocationModuleTest.RecordingCallback[requestCount];
+    final CountDownLatch done = new CountDownLatch(THREAD_COUNT);
+
+    for (int i = 0; i < requestCount; i++) {
+      successCallbacks[i] = new RNFusedLocationModuleTest.RecordingCallback();
+      errorCallbacks[i] = new RNFusedLocationModuleTest.RecordingCallback();
+    }
+
+    for (int t = 0; t < THREAD_COUNT; t++) {
+      final int thread = t;
+
+      new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+            int requestId = thread * REQUESTS_PER_THREAD + i;
+
+            module.getCurrentPosition(
+              requestId,
+              RNFusedLocationModuleTest.createOptions(),
+              successCallbacks[requestId],
+              errorCallbacks[requestId]
+            );
+
+            // Every third request is dropped right away.
+            if (requestId % 3 == 0) {
+              module.cancel(requestId);
+            }
+          }
+
+          done.countDown();
+        }
+      }).start();
+    }
+
+    // Answer sessions while requests keep coming in.
+    while (done.getCount() > 0) {
+      deliverToActiveProviders();
+    }
+
+    deliverToActiveProviders();
+
+    int providerCount = providerFactory.getProviders().size();
+
+    for (int requestId = 0; requestId < requestCount; requestId++) {
+      int callbackCount = successCallbacks[requestId].getCount() + errorCallbacks[requestId].getCount();
+
+      // Cancelled requests may have been answered before cancel arrived.
+      if (requestId % 3 == 0) {
+        assertTrue("request " + requestId, callbackCount <= 1);
+      } else {
+        assertEquals("request " + requestId, 1, callbackCount);
+        assertEquals("request " + requestId, 1, successCallbacks[requestId].getCount());
+      }
+    }
+
+    assertEquals(0, providerFactory.getActiveCount());
+    // Concurrent requests join running sessions instead of starting providers.
+    assertTrue("providers " + providerCount, providerCount < requestCount / 2);
+  }
+
+  @Test
+  public void pendingRequestsAreCappedAcrossThreads() throws Exception {
+    final int requestCount = THREAD_COUNT * (MAX_PENDING_REQUESTS / 4);
+    final AtomicInteger errorCount = new AtomicInteger();
+    final AtomicInteger successCount = new AtomicInteger();
+    final CountDownLatch done = new CountDownLatch(THREAD_COUNT);
+
+    for (int t = 0; t < THREAD_COUNT; t++) {
+      final int thread = t;
+
+      new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = 0; i < requestCount / THREAD_COUNT; i++) {
+            int requestId = thread * (requestCount / THREAD_COUNT) + i;
+
+            module.getCurrentPosition(
+              requestId,
+              createUnjoinableOptions(requestId),
+              new CountingCallback(successCount),
+              new CountingCallback(errorCount)
+            );
+          }
+
+          done.countDown();
+        }
+      }).start();
+    }
+
+    done.await();
+    looper.idle();
+
+    // Sessions can't be shared, only the first ones start providers.
+    assertEquals(MAX_PENDING_REQUESTS, providerFactory.getActiveCount());
+    assertEquals(requestCount - MAX_PENDING_REQUESTS, errorCount.get());
+    assertEquals(0, successCount.get());
+
+    // Joining a running session is still possible at the cap.
+    RNFusedLocationModuleTest.RecordingCallback success = new RNFusedLocationModuleTest.RecordingCallback();
+    RNFusedLocationModuleTest.RecordingCallback error = new RNFusedLocationModuleTest.RecordingCallback();
+    FakeLocationProvider provider = providerFactory.getProviders().get(0);
+    int key = (int) provider.getLocationOptions().getDesiredAccuracy() - 1;
+
+    assertTrue(provider.isActive());
+
+    module.getCurrentPosition(requestCount, createUnjoinableOptions(key), success, error);
+    looper.idle();
+
+    assertEquals(0, error.getCount());
+    assertEquals(MAX_PENDING_REQUESTS, providerFactory.getActiveCount());
+
+    // Teardown stops every provider, no callback is invoked anymore.
+    RNFusedLocationModuleTest.destroy(module);
+
+    assertEquals(0, providerFactory.getActiveCount());
+    assertEquals(0, success.getCount() + error.getCount());
+  }
+
+  /**
+   * Options only joinable by requests using the same key.
+   */
+  private static ReadableMap createUnjoinableOptions(int key) {
+    JavaOnlyMap options = RNFusedLocationModuleTest.createOptions();
+    options.putDouble("desiredAccuracy", key + 1);
+
+    return options;
+  }
+
+  private void deliverToActiveProviders() {
+    looper.idle();
+
+    for (FakeLocationProvider provider: providerFactory.getProviders()) {
+      if (provider.isActive()) {
+        provider.deliver(FakeLocationProvider.createLocation(52.52, 13.405, 5));
+      }
+    }
+
+    looper.idle();
+  }
+
+  private static class CountingCallback implements Callback {
+    private final AtomicInteger count;
+
+    CountingCallback(AtomicInteger count) {
+      this.count = count;
+    }
+
+    @Override
+    public void invoke(Object... args) {
+      count.incrementAndGet();
+    }
+  }
+}
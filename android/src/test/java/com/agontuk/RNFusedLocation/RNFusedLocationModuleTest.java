@@ -0,0 +1,452 @@
+package com.agontuk.RNFusedLocation;
+
+import android.Manifest;
+import android.app.Application;
+import android.content.Context;
+import android.location.Location;
+import android.location.LocationManager;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Callback;
+import com.facebook.react.bridge.JavaOnlyArray;
+import com.facebook.react.bridge.JavaOnlyMap;
+import com.facebook.react.bridge.PromiseImpl;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReadableMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLocationManager;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+public class RNFusedLocationModuleTest {
+  private FakeEventEmitter eventEmitter;
+  private FakeLocationProvider.Factory providerFactory;
+  private RNFusedLocationModule module;
+
+  @Before
+  public void setUp() {
+    Application application = RuntimeEnvironment.getApplication();
+    shadowOf(application).grantPermissions(Manifest.permission.ACCESS_FINE_LOCATION);
+
+    eventEmitter = new FakeEventEmitter();
+    providerFactory = new FakeLocationProvider.Factory();
+    module = new RNFusedLocationModule(
+      new ReactApplicationContext(application),
+      eventEmitter,
+      providerFactory
+    );
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    destroy(module);
+  }
+
+  /**
+   * Tear the module down and wait for its worker thread to quit. Idling the
+   * looper instead would race with the thread quitting.
+   */
+  static void destroy(RNFusedLocationModule module) throws InterruptedException {
+    Thread thread = module.getLooper().getThread();
+
+    module.onCatalystInstanceDestroy();
+    thread.join(10000);
+    assertFalse(thread.isAlive());
+  }
+
+  static JavaOnlyMap createOptions() {
+    JavaOnlyMap options = new JavaOnlyMap();
+    options.putDouble("maximumAge", 0);
+    options.putDouble("timeout", 10000);
+
+    return options;
+  }
+
+  void idle() {
+    shadowOf(module.getLooper()).idle();
+  }
+
+  @Test
+  public void getCurrentPositionResolvesWithProviderLocation() {
+    RecordingCallback success = new RecordingCallback();
+    RecordingCallback error = new RecordingCallback();
+
+    module.getCurrentPosition(1, createOptions(), success, error);
+    idle();
+
+    FakeLocationProvider provider = providerFactory.getLast();
+    assertTrue(provider.isActive());
+    assertFalse(provider.isContinuous());
+
+    provider.deliver(FakeLocationProvider.createLocation(52.52, 13.405, 5));
+    idle();
+
+    assertEquals(1, success.getCount());
+    assertEquals(0, error.getCount());
+    ReadableMap coords = ((ReadableMap) success.getLast()).getMap("coords");
+    assertEquals(52.52, coords.getDouble("latitude"), 1e-9);
+    assertEquals(13.405, coords.getDouble("longitude"), 1e-9);
+    assertFalse(provider.isActive());
+  }
+
+  @Test
+  public void onlyFiniteMaximumAgeUsesCache() {
+    module.getCurrentPosition(1, createOptions(), new RecordingCallback(), new RecordingCallback());
+    idle();
+    providerFactory.getLast().deliver(FakeLocationProvider.createLocation(52.52, 13.405, 5));
+    idle();
+
+    JavaOnlyMap cachedOptions = createOptions();
+    cachedOptions.putDouble("maximumAge", 60000);
+    RecordingCallback cachedSuccess = new RecordingCallback();
+
+    module.getCurrentPosition(2, cachedOptions, cachedSuccess, new RecordingCallback());
+    idle();
+
+    assertEquals(1, cachedSuccess.getCount());
+    assertEquals(1, providerFactory.getProviders().size());
+
+    // Default Infinity always asks a provider, which returns the platform's last location.
+    JavaOnlyMap defaultOptions = createOptions();
+    defaultOptions.remove("maximumAge");
+    RecordingCallback success = new RecordingCallback();
+
+    module.getCurrentPosition(3, defaultOptions, success, new RecordingCallback());
+    idle();
+
+    assertEquals(0, success.getCount());
+    assertEquals(2, providerFactory.getProviders().size());
+    assertTrue(providerFactory.getLast().isActive());
+  }
+
+  @Test
+  public void requestsOnlyJoinSessionsHandlingSettingsTheSameWay() {
+    JavaOnlyMap dialogOptions = createOptions();
+    dialogOptions.putBoolean("showLocationDialog", true);
+    JavaOnlyMap silentOptions = createOptions();
+    silentOptions.putBoolean("showLocationDialog", false);
+    JavaOnlyMap forcedOptions = createOptions();
+    forcedOptions.putBoolean("showLocationDialog", false);
+    forcedOptions.putBoolean("forceRequestLocation", true);
+
+    module.getCurrentPosition(1, dialogOptions, new RecordingCallback(), new RecordingCallback());
+    module.getCurrentPosition(2, dialogOptions, new RecordingCallback(), new RecordingCallback());
+    module.getCurrentPosition(3, silentOptions, new RecordingCallback(), new RecordingCallback());
+    module.getCurrentPosition(4, forcedOptions, new RecordingCallback(), new RecordingCallback());
+    idle();
+
+    assertEquals(3, providerFactory.getProviders().size());
+  }
+
+  @Test
+  public void fastFirstFixKeepsSamplingAndReturnsBestAtDeadline() {
+    ShadowLocationManager locationManager = getLocationManager();
+    locationManager.setProviderEnabled(LocationManager.GPS_PROVIDER, true);
+    locationManager.setProviderEnabled(LocationManager.NETWORK_PROVIDER, false);
+    locationManager.setProviderEnabled(LocationManager.PASSIVE_PROVIDER, true);
+
+    JavaOnlyMap options = createOptions();
+    options.putBoolean("fastFirstFix", true);
+    options.putDouble("maxAccuracy", 10);
+    options.putDouble("timeout", 1000);
+    options.putDouble("interval", 100);
+    RecordingCallback success = new RecordingCallback();
+    RecordingCallback error = new RecordingCallback();
+
+    module.getCurrentPosition(1, options, success, error);
+    idle();
+
+    Location coarse = FakeLocationProvider.createLocation(52.52, 13.405, 50);
+    coarse.setProvider(LocationManager.GPS_PROVIDER);
+    locationManager.simulateLocation(coarse);
+    idle();
+
+    // A coarse fix doesn't stop the source, a better one may follow.
+    assertEquals(0, success.getCount());
+    assertFalse(locationManager.getLocationUpdateListeners().isEmpty());
+
+    Location better = FakeLocationProvider.createLocation(52.52, 13.405, 30);
+    better.setProvider(LocationManager.GPS_PROVIDER);
+    better.setTime(coarse.getTime() + 500);
+    locationManager.simulateLocation(better);
+    shadowOf(module.getLooper()).idleFor(1100, TimeUnit.MILLISECONDS);
+
+    assertEquals(0, error.getCount());
+    assertEquals(1, success.getCount());
+    ReadableMap position = (ReadableMap) success.getLast();
+    assertTrue(position.getBoolean("bestEffort"));
+    assertEquals(30, position.getMap("coords").getDouble("accuracy"), 0);
+    assertTrue(locationManager.getLocationUpdateListeners().isEmpty());
+  }
+
+  @Test
+  public void fastFirstFixWithOnlyPassiveIsUnavailable() {
+    ShadowLocationManager locationManager = getLocationManager();
+    locationManager.setProviderEnabled(LocationManager.GPS_PROVIDER, false);
+    locationManager.setProviderEnabled(LocationManager.NETWORK_PROVIDER, false);
+    locationManager.setProviderEnabled(LocationManager.PASSIVE_PROVIDER, true);
+
+    JavaOnlyMap options = createOptions();
+    options.putBoolean("fastFirstFix", true);
+    RecordingCallback success = new RecordingCallback();
+    RecordingCallback error = new RecordingCallback();
+
+    module.getCurrentPosition(1, options, success, error);
+    idle();
+
+    assertEquals(0, success.getCount());
+    assertEquals(
+      LocationError.POSITION_UNAVAILABLE.getValue(),
+      ((ReadableMap) error.getLast()).getInt("code")
+    );
+  }
+
+  private static ShadowLocationManager getLocationManager() {
+    return shadowOf((LocationManager) RuntimeEnvironment.getApplication().getSystemService(Context.LOCATION_SERVICE));
+  }
+
+  @Test
+  public void getCurrentPositionForwardsProviderError() {
+    RecordingCallback success = new RecordingCallback();
+    RecordingCallback error = new RecordingCallback();
+
+    module.getCurrentPosition(1, createOptions(), success, error);
+    idle();
+    providerFactory.getLast().fail(LocationError.POSITION_UNAVAILABLE);
+    idle();
+
+    assertEquals(0, success.getCount());
+    assertEquals(1, error.getCount());
+    assertEquals(
+      LocationError.POSITION_UNAVAILABLE.getValue(),
+      ((ReadableMap) error.getLast()).getInt("code")
+    );
+  }
+
+  @Test
+  public void getCurrentPositionFailsWithoutPermission() {
+    shadowOf(RuntimeEnvironment.getApplication()).denyPermissions(Manifest.permission.ACCESS_FINE_LOCATION);
+    RecordingCallback success = new RecordingCallback();
+    RecordingCallback error = new RecordingCallback();
+
+    module.getCurrentPosition(1, createOptions(), success, error);
+    idle();
+
+    assertEquals(0, success.getCount());
+    assertEquals(1, error.getCount());
+    assertTrue(providerFactory.getProviders().isEmpty());
+  }
+
+  @Test
+  public void cancelStopsProviderWithoutCallbacks() {
+    RecordingCallback success = new RecordingCallback();
+    RecordingCallback error = new RecordingCallback();
+
+    module.getCurrentPosition(1, createOptions(), success, error);
+    idle();
+    module.cancel(1);
+    idle();
+
+    assertFalse(providerFactory.getLast().isActive());
+    assertEquals(0, success.getCount());
+    assertEquals(0, error.getCount());
+  }
+
+  @Test
+  public void watchEmitsLocationsUntilCleared() {
+    module.addWatch(1, createOptions());
+    idle();
+
+    FakeLocationProvider provider = providerFactory.getLast();
+    assertTrue(provider.isActive());
+    assertTrue(provider.isContinuous());
+
+    provider.deliver(FakeLocationProvider.createLocation(52.52, 13.405, 5));
+    idle();
+
+    assertEquals(1, eventEmitter.count("geolocationDidChange"));
+    assertNotNull(eventEmitter.getLast("geolocationDidChange"));
+
+    module.clearWatch(1);
+    idle();
+
+    assertFalse(provider.isActive());
+    assertNull(eventEmitter.getLast("geolocationError"));
+  }
+
+  @Test
+  public void adaptiveFastModeIsNotThrottledByBaseInterval() {
+    JavaOnlyMap options = createOptions();
+    options.putBoolean("adaptiveSampling", true);
+    options.putDouble("interval", 8000);
+    options.putDouble("fastestInterval", 4000);
+    options.putDouble("distanceFilter", 0);
+
+    module.addWatch(1, options);
+    idle();
+
+    FakeLocationProvider provider = providerFactory.getLast();
+    long startTime = SystemClock.elapsedRealtimeNanos();
+
+    // 20 m/s switches to fast mode after 5 secs, halving fastestInterval.
+    for (int i = 0; i < 8; i++) {
+      Location location = FakeLocationProvider.createLocation(52.52 + i * 0.0004, 13.405, 5);
+      location.setSpeed(20);
+      location.setElapsedRealtimeNanos(startTime + TimeUnit.SECONDS.toNanos(i * 2));
+      provider.deliver(location);
+    }
+
+    idle();
+
+    assertEquals(2000, provider.getLocationOptions().getFastestInterval());
+    // Fixes at 0, 4 & 8 secs pass in moving mode, every one after the switch.
+    assertEquals(7, eventEmitter.count("geolocationDidChange"));
+  }
+
+  @Test
+  public void geofencesOnlyCheckFreshContinuousFixes() {
+    JavaOnlyMap geofence = new JavaOnlyMap();
+    geofence.putString("id", "home");
+    geofence.putDouble("latitude", 52.52);
+    geofence.putDouble("longitude", 13.405);
+    geofence.putDouble("radius", 100);
+    JavaOnlyMap options = createOptions();
+    options.putDouble("maxAccuracy", 50);
+    RecordingCallback resolve = new RecordingCallback();
+
+    module.addGeofences(JavaOnlyArray.of(geofence), options, new PromiseImpl(resolve, new RecordingCallback()));
+    idle();
+
+    assertEquals(1, resolve.getCount());
+    FakeLocationProvider continuousProvider = providerFactory.getLast();
+
+    module.getCurrentPosition(1, createOptions(), new RecordingCallback(), new RecordingCallback());
+    idle();
+    providerFactory.getLast().deliver(FakeLocationProvider.createLocation(52.52, 13.405, 5));
+
+    Location stale = FakeLocationProvider.createLocation(52.52, 13.405, 5);
+    stale.setElapsedRealtimeNanos(stale.getElapsedRealtimeNanos() - TimeUnit.MINUTES.toNanos(5));
+    continuousProvider.deliver(stale);
+    continuousProvider.deliver(FakeLocationProvider.createLocation(52.52, 13.405, 200));
+    idle();
+
+    assertEquals(0, eventEmitter.count(GeofenceTransition.ENTER.getEventName()));
+
+    continuousProvider.deliver(FakeLocationProvider.createLocation(52.52, 13.405, 5));
+    idle();
+
+    assertEquals(1, eventEmitter.count(GeofenceTransition.ENTER.getEventName()));
+  }
+
+  @Test
+  public void geofenceOptionsOfAllCallsAreCombined() {
+    JavaOnlyMap geofence = new JavaOnlyMap();
+    geofence.putString("id", "home");
+    geofence.putDouble("latitude", 52.52);
+    geofence.putDouble("longitude", 13.405);
+    geofence.putDouble("radius", 100);
+    JavaOnlyMap options = createOptions();
+    options.putDouble("interval", 1000);
+    JavaOnlyMap laterOptions = createOptions();
+    laterOptions.putDouble("interval", 60000);
+
+    module.addGeofences(JavaOnlyArray.of(geofence), options, new PromiseImpl(null, null));
+    geofence.putString("id", "work");
+    module.addGeofences(JavaOnlyArray.of(geofence), laterOptions, new PromiseImpl(null, null));
+    idle();
+
+    // The first geofence still needs updates every second.
+    assertEquals(1000, providerFactory.getLast().getLocationOptions().getInterval());
+  }
+
+  @Test
+  public void invalidOptionsProfileEmitsError() {
+    JavaOnlyMap options = new JavaOnlyMap();
+    options.putInt("profileId", 42);
+
+    module.registerOptionsProfile(1, options);
+
+    assertEquals(
+      LocationError.INTERNAL_ERROR.getValue(),
+      ((ReadableMap) eventEmitter.getLast("geolocationError")).getInt("code")
+    );
+  }
+
+  @Test
+  public void fixesAreHandledWithoutMainThreadWork() {
+    ShadowLooper mainLooper = shadowOf(Looper.getMainLooper());
+    RecordingCallback success = new RecordingCallback();
+    RecordingCallback error = new RecordingCallback();
+
+    module.getCurrentPosition(1, createOptions(), success, error);
+    module.addWatch(2, createOptions());
+    idle();
+
+    for (FakeLocationProvider provider: providerFactory.getProviders()) {
+      provider.deliver(FakeLocationProvider.createLocation(52.52, 13.405, 5));
+    }
+
+    idle();
+
+    assertEquals(1, success.getCount());
+    assertEquals(module.getLooper().getThread(), success.getThread());
+    assertEquals(1, eventEmitter.count("geolocationDidChange"));
+
+    for (Thread thread: eventEmitter.getThreads()) {
+      assertEquals(module.getLooper().getThread(), thread);
+    }
+
+    // Neither callbacks, timeouts nor payloads may be posted to the main looper.
+    assertTrue(mainLooper.isIdle());
+    assertEquals(Duration.ZERO, mainLooper.getNextScheduledTaskTime());
+  }
+
+  /**
+   * Callback recording its invocations, invoked on the worker thread.
+   */
+  static class RecordingCallback implements Callback {
+    private int count = 0;
+    @Nullable private Object last;
+    @Nullable private Thread thread;
+
+    @Override
+    public synchronized void invoke(Object... args) {
+      count++;
+      last = args.length > 0 ? args[0] : null;
+      thread = Thread.currentThread();
+    }
+
+    public synchronized int getCount() {
+      return count;
+    }
+
+    @Nullable
+    public synchronized Object getLast() {
+      return last;
+    }
+
+    @Nullable
+    public synchronized Thread getThread() {
+      return thread;
+    }
+  }
+}
@@ -0,0 +1,191 @@
+package com.agontuk.RNFusedLocation;
+
+import android.Manifest;
+import android.app.Application;
+import android.location.Location;
+
+import com.facebook.react.bridge.Callback;
+import com.facebook.react.bridge.JavaOnlyMap;
+import com.facebook.react.bridge.ReactApplicationContext;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Work done for every getCurrentPosition call: parsing its options, building
+ * errors, and dispatching a fix to the requests waiting on a provider.
+ * Location payloads are measured by LocationSerializationBenchmark.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class RequestPathBenchmark {
+  private static final int CALL_COUNT = 100000;
+  private static final int PROFILE_ID = 1;
+  // Sessions only start below the module's pending request limit.
+  private static final int SESSION_COUNT = 16;
+  private static final int REQUESTS_PER_SESSION = 8;
+
+  private FakeLocationProvider.Factory providerFactory;
+  private RNFusedLocationModule module;
+
+  @Before
+  public void setUp() {
+    Application application = RuntimeEnvironment.getApplication();
+    shadowOf(application).grantPermissions(Manifest.permission.ACCESS_FINE_LOCATION);
+
+    providerFactory = new FakeLocationProvider.Factory();
+    module = new RNFusedLocationModule(
+      new ReactApplicationContext(application),
+      new FakeEventEmitter(),
+      providerFactory
+    );
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    LocationOptions.clearProfiles();
+    RNFusedLocationModuleTest.destroy(module);
+  }
+
+  private static JavaOnlyMap createOptions() {
+    JavaOnlyMap accuracy = new JavaOnlyMap();
+    accuracy.putString("android", "high");
+
+    JavaOnlyMap options = RNFusedLocationModuleTest.createOptions();
+    options.putMap("accuracy", accuracy);
+    options.putDouble("interval", 5000);
+    options.putDouble("fastestInterval", 2000);
+    options.putDouble("distanceFilter", 10);
+    options.putBoolean("showLocationDialog", true);
+
+    return options;
+  }
+
+  @Test
+  public void buildError() throws Exception {
+    Benchmark.measure("LocationUtils.buildError", CALL_COUNT, new Benchmark.Round() {
+      @Override
+      public void run() {
+        for (int i = 0; i < CALL_COUNT; i++) {
+          Benchmark.sink = LocationUtils.buildError(LocationError.TIMEOUT, null);
+        }
+      }
+    });
+    Benchmark.measure("LocationUtils.buildError, message", CALL_COUNT, new Benchmark.Round() {
+      @Override
+      public void run() {
+        for (int i = 0; i < CALL_COUNT; i++) {
+          Benchmark.sink = LocationUtils.buildError(LocationError.INTERNAL_ERROR, "Unknown options profile");
+        }
+      }
+    });
+
+    assertEquals(
+      LocationError.TIMEOUT.getValue(),
+      LocationUtils.buildError(LocationError.TIMEOUT, null).getInt("code")
+    );
+  }
+
+  @Test
+  public void fromReadableMap() throws Exception {
+    final JavaOnlyMap options = createOptions();
+    final JavaOnlyMap profileOptions = new JavaOnlyMap();
+    profileOptions.putInt("profileId", PROFILE_ID);
+    LocationOptions.registerProfile(PROFILE_ID, LocationOptions.fromReadableMap(options));
+
+    Benchmark.measure("LocationOptions.fromReadableMap", CALL_COUNT, new Benchmark.Round() {
+      @Override
+      public void run() {
+        for (int i = 0; i < CALL_COUNT; i++) {
+          Benchmark.sink = LocationOptions.fromReadableMap(options);
+        }
+      }
+    });
+    Benchmark.measure("LocationOptions.fromReadableMap, profile", CALL_COUNT, new Benchmark.Round() {
+      @Override
+      public void run() {
+        for (int i = 0; i < CALL_COUNT; i++) {
+          Benchmark.sink = LocationOptions.fromReadableMap(profileOptions);
+        }
+      }
+    });
+
+    // Equal options are interned, so both resolve to the same instance.
+    assertSame(LocationOptions.fromReadableMap(options), LocationOptions.fromReadableMap(profileOptions));
+  }
+
+  /**
+   * Fixes are dispatched from the benchmark thread so its allocations are
+   * counted, the worker is idle meanwhile so nothing runs concurrently.
+   */
+  @Test
+  public void onLocationChange() throws Exception {
+    final int requestCount = SESSION_COUNT * REQUESTS_PER_SESSION;
+    final JavaOnlyMap[] sessionOptions = new JavaOnlyMap[SESSION_COUNT];
+    final List<FakeLocationProvider> providers = new ArrayList<>();
+    final Location location = FakeLocationProvider.createLocation(52.52, 13.405, 5);
+    final int[] successCount = new int[1];
+    final Callback success = new Callback() {
+      @Override
+      public void invoke(Object... args) {
+        successCount[0]++;
+      }
+    };
+    final Callback error = new Callback() {
+      @Override
+      public void invoke(Object... args) {
+        throw new AssertionError("Request failed: " + args[0]);
+      }
+    };
+
+    // Requests only join sessions with the same desiredAccuracy.
+    for (int i = 0; i < SESSION_COUNT; i++) {
+      sessionOptions[i] = createOptions();
+      sessionOptions[i].putDouble("desiredAccuracy", 10 + i);
+    }
+
+    Benchmark.Round issueRequests = new Benchmark.Round() {
+      private int requestId = 0;
+
+      @Override
+      public void run() {
+        int providerCount = providerFactory.getProviders().size();
+
+        for (int i = 0; i < SESSION_COUNT; i++) {
+          for (int j = 0; j < REQUESTS_PER_SESSION; j++) {
+            module.getCurrentPosition(requestId++, sessionOptions[i], success, error);
+          }
+        }
+
+        shadowOf(module.getLooper()).idle();
+        providers.clear();
+        providers.addAll(providerFactory.getProviders().subList(providerCount, providerCount + SESSION_COUNT));
+      }
+    };
+
+    Benchmark.measure("onLocationChange, per request", requestCount, issueRequests, new Benchmark.Round() {
+      @Override
+      public void run() {
+        for (FakeLocationProvider provider: providers) {
+          module.onLocationChange(provider, location);
+        }
+      }
+    });
+
+    assertEquals(
+      providerFactory.getProviders().size() / SESSION_COUNT * requestCount,
+      successCount[0]
+    );
+    assertEquals(0, providerFactory.getActiveCount());
+  }
+}
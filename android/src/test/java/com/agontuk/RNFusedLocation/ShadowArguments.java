@@ -0,0 +1,27 @@
+package com.agontuk.RNFusedLocation;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.JavaOnlyArray;
+import com.facebook.react.bridge.JavaOnlyMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+
+/**
+ * Native maps & arrays need the React Native JNI libraries, tests get the
+ * Java only ones instead, on every thread.
+ */
+@Implements(Arguments.class)
+public class ShadowArguments {
+  @Implementation
+  protected static WritableMap createMap() {
+    return new JavaOnlyMap();
+  }
+
+  @Implementation
+  protected static WritableArray createArray() {
+    return new JavaOnlyArray();
+  }
+}
@@ -0,0 +1,117 @@
+package com.agontuk.RNFusedLocation;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+public class TimerWheelBenchmark {
+  private static final int TIMER_COUNT = 100000;
+  private static final long TICK = 50;
+  private static final long MAX_DELAY = 60 * 1000;
+
+  private final TimerWheel.Timer[] timers = new TimerWheel.Timer[TIMER_COUNT];
+  private final long[] delays = new long[TIMER_COUNT];
+  private int expiredCount;
+  private TimerWheel timerWheel;
+
+  @Before
+  public void setUp() {
+    Random random = new Random(1);
+
+    for (int i = 0; i < TIMER_COUNT; i++) {
+      timers[i] = new TimerWheel.Timer();
+      delays[i] = 1 + random.nextInt((int) MAX_DELAY);
+    }
+
+    timerWheel = new TimerWheel(new Handler(Looper.getMainLooper()), TICK, new TimerWheel.Listener() {
+      @Override
+      public void onTimerExpired(TimerWheel.Timer timer) {
+        expiredCount++;
+      }
+    });
+  }
+
+  @Test
+  public void scheduleAndCancel() throws Exception {
+    Benchmark.measure("TimerWheel.schedule+cancel", TIMER_COUNT * 2, new Benchmark.Round() {
+      @Override
+      public void run() {
+        for (int i = 0; i < TIMER_COUNT; i++) {
+          timerWheel.schedule(timers[i], delays[i]);
+        }
+
+        for (int i = 0; i < TIMER_COUNT; i++) {
+          timerWheel.cancel(timers[i]);
+        }
+      }
+    });
+
+    for (TimerWheel.Timer timer: timers) {
+      assertFalse(timer.isScheduled());
+    }
+  }
+
+  @Test
+  public void expire() throws Exception {
+    Benchmark.measure("TimerWheel.expire", TIMER_COUNT, new Benchmark.Round() {
+      @Override
+      public void run() {
+        expiredCount = 0;
+
+        for (int i = 0; i < TIMER_COUNT; i++) {
+          timerWheel.schedule(timers[i], delays[i]);
+        }
+
+        shadowOf(Looper.getMainLooper()).idleFor(MAX_DELAY + TICK, TimeUnit.MILLISECONDS);
+        assertEquals(TIMER_COUNT, expiredCount);
+      }
+    });
+  }
+
+  @Test
+  public void wakesUpForTheEarliestTimerOnly() {
+    ShadowLooper looper = shadowOf(Looper.getMainLooper());
+    long start = SystemClock.uptimeMillis();
+
+    // The last one is due a full wheel round later.
+    timerWheel.schedule(timers[0], 30 * 1000);
+    timerWheel.schedule(timers[1], 10 * 1000);
+    timerWheel.schedule(timers[2], 70 * 1000);
+
+    assertNextTick(looper, start + 10 * 1000);
+
+    looper.idleFor(10 * 1000 + TICK, TimeUnit.MILLISECONDS);
+    assertEquals(1, expiredCount);
+    assertNextTick(looper, start + 30 * 1000);
+
+    looper.idleFor(20 * 1000, TimeUnit.MILLISECONDS);
+    assertEquals(2, expiredCount);
+    assertNextTick(looper, start + 70 * 1000);
+
+    timerWheel.cancel(timers[2]);
+    assertEquals(Duration.ZERO, looper.getNextScheduledTaskTime());
+  }
+
+  private static void assertNextTick(ShadowLooper looper, long deadline) {
+    long nextTime = looper.getNextScheduledTaskTime().toMillis();
+
+    assertTrue(nextTime >= deadline);
+    assertTrue(nextTime < deadline + TICK);
+  }
+}
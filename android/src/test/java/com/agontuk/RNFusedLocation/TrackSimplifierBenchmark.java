@@ -0,0 +1,128 @@
+package com.agontuk.RNFusedLocation;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TrackSimplifierBenchmark {
+  private static final int POINT_COUNT = 100000; /* encoded polyline */
+  private static final double TOLERANCE = 10; /* meters */
+
+  /**
+   * Flat [lat, lng, ...] random walk of ~5m steps with GPS like jitter.
+   */
+  static double[] createTrack(int pointCount, long seed) {
+    Random random = new Random(seed);
+    double[] coordinates = new double[pointCount * 2];
+    double latitude = 52.52;
+    double longitude = 13.405;
+    double heading = 0;
+
+    for (int i = 0; i < pointCount; i++) {
+      heading += random.nextGaussian() * 0.1;
+      latitude += Math.cos(heading) * 4.5e-5;
+      longitude += Math.sin(heading) * 7.4e-5;
+      coordinates[i * 2] = latitude + random.nextGaussian() * 1e-5;
+      coordinates[i * 2 + 1] = longitude + random.nextGaussian() * 1e-5;
+    }
+
+    return coordinates;
+  }
+
+  @Test
+  public void simplify10k() throws Exception {
+    measureSimplify(10000);
+  }
+
+  @Test
+  public void simplify100k() throws Exception {
+    measureSimplify(100000);
+  }
+
+  @Test
+  public void simplify1M() throws Exception {
+    measureSimplify(1000000);
+  }
+
+  @Test
+  public void streaming10k() throws Exception {
+    measureStreaming(10000);
+  }
+
+  @Test
+  public void streaming100k() throws Exception {
+    measureStreaming(100000);
+  }
+
+  @Test
+  public void streaming1M() throws Exception {
+    measureStreaming(1000000);
+  }
+
+  @Test
+  public void encodePolyline() throws Exception {
+    final double[] track = createTrack(POINT_COUNT, 2);
+
+    Benchmark.measure("TrackSimplifier.encodePolyline " + POINT_COUNT, POINT_COUNT, new Benchmark.Round() {
+      @Override
+      public void run() {
+        Benchmark.sink = TrackSimplifier.encodePolyline(track);
+      }
+    });
+
+    // Every coordinate takes one character at least, a zero delta included.
+    assertTrue(TrackSimplifier.encodePolyline(track).length() >= POINT_COUNT * 2);
+  }
+
+  private static void measureSimplify(int pointCount) throws Exception {
+    final double[] track = createTrack(pointCount, 1);
+
+    Benchmark.measure("TrackSimplifier.simplify " + pointCount, pointCount, new Benchmark.Round() {
+      @Override
+      public void run() {
+        Benchmark.sink = TrackSimplifier.simplify(track, TOLERANCE);
+      }
+    });
+
+    double[] simplified = TrackSimplifier.simplify(track, TOLERANCE);
+
+    assertTrue(simplified.length < track.length);
+    assertEquals(track[0], simplified[0], 0);
+    assertEquals(track[track.length - 1], simplified[simplified.length - 1], 0);
+  }
+
+  /**
+   * Points added one by one as a watch would, simplified track read once.
+   */
+  private static void measureStreaming(int pointCount) throws Exception {
+    final double[] track = createTrack(pointCount, 1);
+
+    Benchmark.measure("TrackSimplifier.add " + pointCount, pointCount, new Benchmark.Round() {
+      @Override
+      public void run() {
+        TrackSimplifier trackSimplifier = new TrackSimplifier(TOLERANCE);
+
+        for (int i = 0; i < track.length; i += 2) {
+          trackSimplifier.add(track[i], track[i + 1]);
+        }
+
+        Benchmark.sink = trackSimplifier.getCoordinates();
+      }
+    });
+
+    TrackSimplifier trackSimplifier = new TrackSimplifier(TOLERANCE);
+
+    for (int i = 0; i < track.length; i += 2) {
+      trackSimplifier.add(track[i], track[i + 1]);
+    }
+
+    double[] simplified = trackSimplifier.getCoordinates();
+
+    assertTrue(simplified.length < track.length);
+    assertEquals(track[0], simplified[0], 0);
+    assertEquals(track[track.length - 1], simplified[simplified.length - 1], 0);
+  }
+}
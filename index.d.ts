@@ -28,16 +28,28 @@ declare module "react-native-geolocation-service" {
     showLocationDialog?: boolean;
     forceRequestLocation?: boolean;
     forceLocationManager?: boolean;
+    compactPayload?: boolean;
+    replayTrace?: string;
+    replaySpeed?: number;
   }
 
   interface GeoOptions extends BaseOptions {
     timeout?: number;
     maximumAge?: number;
+    fastFirstFix?: boolean;
+    maxAccuracy?: number;
+    desiredAccuracy?: number;
   }
 
   interface GeoWatchOptions extends BaseOptions {
     interval?: number;
     fastestInterval?: number;
+    maxWaitTime?: number;
+    useRingBuffer?: boolean;
+    maxAccuracy?: number;
+    dedupeDistance?: number;
+    smoothing?: boolean;
+    adaptiveSampling?: boolean;
     useSignificantChanges?: boolean;
     showsBackgroundLocationIndicator?: boolean;
   }
@@ -70,7 +82,8 @@ declare module "react-native-geolocation-service" {
     coords: GeoCoordinates;
     timestamp: number;
     mocked?: boolean;
-    provider?: "fused" | "gps" | "network" | "passive";
+    provider?: "fused" | "gps" | "network" | "passive" | "replay" | "unknown";
+    bestEffort?: boolean;
   }
 
   type SuccessCallback = (position: GeoPosition) => void;
@@ -84,16 +97,171 @@ declare module "react-native-geolocation-service" {
   export function getCurrentPosition(
     successCallback: SuccessCallback,
     errorCallback?: ErrorCallback,
-    options?: GeoOptions
-  ): void;
+    options?: GeoOptions | number
+  ): number | undefined;
+
+  export function cancelRequest(requestId: number): void;
+
+  export function registerOptionsProfile(options: GeoOptions | GeoWatchOptions): number;
+
+  export function removeOptionsProfile(profileId: number): void;
 
   export function watchPosition(
     successCallback: SuccessCallback,
     errorCallback?: ErrorCallback,
-    options?: GeoWatchOptions
+    options?: GeoWatchOptions | number
   ): number;
 
   export function clearWatch(watchID: number): void;
 
+  export interface LatencyHistogram {
+    count: number;
+    mean: number;
+    p50: number;
+    p90: number;
+    p99: number;
+    max: number;
+  }
+
+  export interface Diagnostics {
+    timeToFirstFix: {
+      fused: { [accuracy: string]: LatencyHistogram };
+      locationManager: { [accuracy: string]: LatencyHistogram };
+    };
+    firstFixWins: {
+      fused: LatencyHistogram;
+      gps: LatencyHistogram;
+      network: LatencyHistogram;
+      passive: LatencyHistogram;
+    };
+    timeToFix: LatencyHistogram;
+    settingsCheckLatency: LatencyHistogram;
+    fixToEmitLatency: LatencyHistogram;
+    timeouts: number;
+    fixesEmitted: number;
+    errors: { [code: string]: number };
+    cacheHits: number;
+    cacheMisses: number;
+    settingsCacheHits: number;
+    settingsCacheMisses: number;
+    filter: {
+      passed: number;
+      inaccurate: number;
+      throttled: number;
+      duplicate: number;
+    };
+    pendingRequests: number;
+    activeProviders: number;
+  }
+
+  export function getDiagnostics(): Promise<Diagnostics>;
+
+  export function setLocationCachePersistence(enabled: boolean): Promise<void>;
+
+  export function clearLocationCache(): Promise<void>;
+
+  export interface RecordedTrack {
+    positions: GeoPosition[];
+    nextOffset: number;
+    size: number;
+  }
+
+  export function startRecording(options?: GeoWatchOptions | number): Promise<void>;
+
+  export function stopRecording(): Promise<void>;
+
+  export function flushRecording(): Promise<void>;
+
+  export function readRecording(
+    offset?: number,
+    limit?: number
+  ): Promise<RecordedTrack>;
+
+  export function clearRecording(): Promise<void>;
+
+  export type TrackFormat = "polyline" | "packed";
+
+  export function simplifyTrack(
+    track: number[],
+    tolerance: number,
+    format?: TrackFormat
+  ): Promise<string | number[]>;
+
+  export function simplifyRecording(
+    tolerance: number,
+    format?: TrackFormat
+  ): Promise<string | number[]>;
+
+  export function startTrackSimplification(tolerance: number): Promise<void>;
+
+  export function getSimplifiedTrack(
+    format?: TrackFormat
+  ): Promise<string | number[]>;
+
+  export function stopTrackSimplification(): Promise<void>;
+
+  export interface CircleGeofence {
+    id: string;
+    latitude: number;
+    longitude: number;
+    radius: number;
+    dwellTime?: number;
+  }
+
+  export interface PolygonGeofence {
+    id: string;
+    polygon: number[];
+    dwellTime?: number;
+  }
+
+  export type Geofence = CircleGeofence | PolygonGeofence;
+
+  export interface GeofenceEvent {
+    type: "enter" | "exit" | "dwell";
+    id: string;
+    position: GeoPosition;
+  }
+
+  export interface SamplingChange {
+    mode: "stationary" | "moving" | "fast";
+    speed: number;
+    accuracy: AccuracyAndroid;
+    interval: number;
+    fastestInterval: number;
+  }
+
+  export function startBackgroundUpdates(options?: GeoWatchOptions | number): Promise<void>;
+
+  export function stopBackgroundUpdates(): Promise<void>;
+
+  export interface BackgroundLocationPage {
+    positions: GeoPosition[];
+    remaining: number;
+    dropped: number;
+  }
+
+  export function flushBackgroundLocations(limit?: number): Promise<BackgroundLocationPage>;
+
+  export function addBackgroundLocationListener(
+    listener: (positions: GeoPosition[], dropped: number) => void
+  ): { remove: () => void };
+
+  export function addSamplingChangeListener(
+    listener: (change: SamplingChange) => void
+  ): { remove: () => void };
+
+  export function addGeofences(
+    geofences: Geofence[],
+    options?: GeoWatchOptions | number
+  ): Promise<number>;
+
+  export function removeGeofences(ids: string[]): Promise<number>;
+
+  export function clearGeofences(): Promise<void>;
+
+  export function addGeofenceListener(
+    listener: (event: GeofenceEvent) => void
+  ): { remove: () => void };
+
   export function stopObserving(): void;
 }
@@ -38,6 +38,106 @@ const Geolocation = {
     navigator.geolocation.clearWatch(watchID);
   },
 
+  cancelRequest: function () {
+    throw new Error('Method not supported by browser');
+  },
+
+  registerOptionsProfile: function () {
+    throw new Error('Method not supported by browser');
+  },
+
+  removeOptionsProfile: function () {
+    throw new Error('Method not supported by browser');
+  },
+
+  getDiagnostics: async function () {
+    return Promise.reject('Method not supported by browser');
+  },
+
+  setLocationCachePersistence: async function () {
+    return Promise.reject('Method not supported by browser');
+  },
+
+  clearLocationCache: async function () {
+    return Promise.reject('Method not supported by browser');
+  },
+
+  startRecording: async function () {
+    return Promise.reject('Method not supported by browser');
+  },
+
+  stopRecording: async function () {
+    return Promise.reject('Method not supported by browser');
+  },
+
+  flushRecording: async function () {
+    return Promise.reject('Method not supported by browser');
+  },
+
+  readRecording: async function () {
+    return Promise.reject('Method not supported by browser');
+  },
+
+  clearRecording: async function () {
+    return Promise.reject('Method not supported by browser');
+  },
+
+  simplifyTrack: async function () {
+    return Promise.reject('Method not supported by browser');
+  },
+
+  simplifyRecording: async function () {
+    return Promise.reject('Method not supported by browser');
+  },
+
+  startTrackSimplification: async function () {
+    return Promise.reject('Method not supported by browser');
+  },
+
+  getSimplifiedTrack: async function () {
+    return Promise.reject('Method not supported by browser');
+  },
+
+  stopTrackSimplification: async function () {
+    return Promise.reject('Method not supported by browser');
+  },
+
+  addGeofences: async function () {
+    return Promise.reject('Method not supported by browser');
+  },
+
+  removeGeofences: async function () {
+    return Promise.reject('Method not supported by browser');
+  },
+
+  clearGeofences: async function () {
+    return Promise.reject('Method not supported by browser');
+  },
+
+  startBackgroundUpdates: async function () {
+    return Promise.reject('Method not supported by browser');
+  },
+
+  stopBackgroundUpdates: async function () {
+    return Promise.reject('Method not supported by browser');
+  },
+
+  flushBackgroundLocations: async function () {
+    return Promise.reject('Method not supported by browser');
+  },
+
+  addBackgroundLocationListener: function () {
+    throw new Error('Method not supported by browser');
+  },
+
+  addSamplingChangeListener: function () {
+    throw new Error('Method not supported by browser');
+  },
+
+  addGeofenceListener: function () {
+    throw new Error('Method not supported by browser');
+  },
+
   stopObserving: function () {
     throw new Error('Method not supported by browser');
   }
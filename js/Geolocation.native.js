@@ -7,6 +7,110 @@ const noop = () => {};
 let subscriptions = [];
 let updatesEnabled = false;
 
+// On android, watchers are registered natively and every location is tagged
+// with the ids of the watchers it should be delivered to.
+let watchers = [];
+let ringBufferSequence = 0;
+let nextRequestId = 0;
+let nextProfileId = 0;
+let backgroundListenerCount = 0;
+const profiles = [];
+
+// Field order of compact positions, see LocationUtils.locationToArray
+const COMPACT_POSITION_SIZE = 10;
+const PROVIDERS = ['fused', 'gps', 'network', 'passive', 'replay'];
+
+const GEOFENCE_EVENTS = {
+  enter: 'geofenceEnter',
+  exit: 'geofenceExit',
+  dwell: 'geofenceDwell'
+};
+
+// Providers without a code are sent as strings, or -1/null when they can't be.
+const decodeProvider = (provider) => {
+  if (typeof provider !== 'number' && provider != null) {
+    return provider;
+  }
+
+  return PROVIDERS[provider] || 'unknown';
+};
+
+const decodePosition = data => ({
+  coords: {
+    latitude: data[0],
+    longitude: data[1],
+    altitude: data[2],
+    accuracy: data[3],
+    heading: data[4],
+    speed: data[5],
+    altitudeAccuracy: data[6]
+  },
+  timestamp: data[7],
+  provider: decodeProvider(data[8]),
+  mocked: data[9] === 1
+});
+
+// Profiles are parsed once natively on android (which rejects unknown ids),
+// iOS gets the stored options.
+const resolveOptions = (options) => {
+  if (typeof options !== 'number') {
+    return options;
+  }
+
+  if (Platform.OS === 'android') {
+    return { profileId: options };
+  }
+
+  if (!profiles[options]) {
+    throw new Error(`Unknown options profile: ${options}`);
+  }
+
+  return profiles[options];
+};
+
+const toPosition = data => (Array.isArray(data) ? decodePosition(data) : data);
+
+const dispatchPosition = (data) => {
+  let position;
+  let watchIds;
+
+  if (Array.isArray(data)) {
+    position = decodePosition(data);
+    watchIds = data.slice(COMPACT_POSITION_SIZE);
+  } else {
+    ({ watchIds, ...position } = data);
+  }
+
+  watchIds.forEach((watchID) => {
+    const watcher = watchers[watchID];
+
+    if (watcher) {
+      watcher[0](position);
+    }
+  });
+};
+
+const onLocationChange = (data) => {
+  // Empty event means new locations are available in the native ring buffer
+  if (data == null) {
+    const [nextSequence, ...positions] = RNFusedLocation.readLocations(ringBufferSequence);
+
+    ringBufferSequence = nextSequence;
+    positions.forEach(dispatchPosition);
+    return;
+  }
+
+  dispatchPosition(data);
+};
+
+const dispatchError = (error) => {
+  watchers.forEach((watcher) => {
+    if (watcher && watcher[1]) {
+      watcher[1](error);
+    }
+  });
+};
+
 const Geolocation = {
   setRNConfiguration: (config) => {}, // eslint-disable-line no-unused-vars
 
@@ -30,7 +134,47 @@ const Geolocation = {
     }
 
     // Right now, we're assuming user already granted location permission.
-    RNFusedLocation.getCurrentPosition(options, success, error);
+    if (Platform.OS === 'android') {
+      const requestId = nextRequestId++;
+
+      RNFusedLocation.getCurrentPosition(
+        requestId,
+        resolveOptions(options),
+        data => success(toPosition(data)),
+        error
+      );
+
+      return requestId;
+    }
+
+    RNFusedLocation.getCurrentPosition(resolveOptions(options), success, error);
+    return undefined;
+  },
+
+  cancelRequest: (requestId) => {
+    if (Platform.OS === 'android') {
+      RNFusedLocation.cancel(requestId);
+    }
+  },
+
+  registerOptionsProfile: (options) => {
+    const profileId = nextProfileId++;
+
+    if (Platform.OS === 'android') {
+      RNFusedLocation.registerOptionsProfile(profileId, options);
+    } else {
+      profiles[profileId] = options;
+    }
+
+    return profileId;
+  },
+
+  removeOptionsProfile: (profileId) => {
+    if (Platform.OS === 'android') {
+      RNFusedLocation.removeOptionsProfile(profileId);
+    } else {
+      profiles[profileId] = undefined;
+    }
   },
 
   watchPosition: (success, error = null, options = {}) => {
@@ -39,8 +183,29 @@ const Geolocation = {
       console.error('Must provide a success callback');
     }
 
+    if (Platform.OS === 'android') {
+      if (!updatesEnabled) {
+        subscriptions = [
+          LocationEventEmitter.addListener('geolocationDidChange', onLocationChange),
+          LocationEventEmitter.addListener(
+            'geolocationBatch',
+            positions => positions.forEach(dispatchPosition)
+          ),
+          LocationEventEmitter.addListener('geolocationError', dispatchError)
+        ];
+        updatesEnabled = true;
+      }
+
+      const watchID = watchers.length;
+
+      watchers.push([success, error]);
+      RNFusedLocation.addWatch(watchID, resolveOptions(options));
+
+      return watchID;
+    }
+
     if (!updatesEnabled) {
-      RNFusedLocation.startObserving(options);
+      RNFusedLocation.startObserving(resolveOptions(options));
       updatesEnabled = true;
     }
 
@@ -55,6 +220,21 @@ const Geolocation = {
   },
 
   clearWatch: (watchID) => {
+    if (Platform.OS === 'android') {
+      if (!watchers[watchID]) {
+        return;
+      }
+
+      watchers[watchID] = undefined;
+      RNFusedLocation.clearWatch(watchID);
+
+      if (watchers.every(watcher => !watcher)) {
+        Geolocation.stopObserving();
+      }
+
+      return;
+    }
+
     const sub = subscriptions[watchID];
 
     if (!sub) {
@@ -86,7 +266,236 @@ const Geolocation = {
     }
   },
 
+  getDiagnostics: async () => {
+    if (Platform.OS !== 'android') {
+      return Promise.reject('getDiagnostics is only for android');
+    }
+
+    return RNFusedLocation.getDiagnostics();
+  },
+
+  setLocationCachePersistence: async (enabled) => {
+    if (Platform.OS !== 'android') {
+      return Promise.reject('setLocationCachePersistence is only for android');
+    }
+
+    return RNFusedLocation.setLocationCachePersistence(enabled);
+  },
+
+  clearLocationCache: async () => {
+    if (Platform.OS !== 'android') {
+      return Promise.reject('clearLocationCache is only for android');
+    }
+
+    return RNFusedLocation.clearLocationCache();
+  },
+
+  startRecording: async (options = {}) => {
+    if (Platform.OS !== 'android') {
+      return Promise.reject('startRecording is only for android');
+    }
+
+    return RNFusedLocation.startRecording(resolveOptions(options));
+  },
+
+  stopRecording: async () => {
+    if (Platform.OS !== 'android') {
+      return Promise.reject('stopRecording is only for android');
+    }
+
+    return RNFusedLocation.stopRecording();
+  },
+
+  flushRecording: async () => {
+    if (Platform.OS !== 'android') {
+      return Promise.reject('flushRecording is only for android');
+    }
+
+    return RNFusedLocation.flushRecording();
+  },
+
+  readRecording: async (offset = 0, limit = 1000) => {
+    if (Platform.OS !== 'android') {
+      return Promise.reject('readRecording is only for android');
+    }
+
+    const { locations, nextOffset, size } = await RNFusedLocation.readRecording(offset, limit);
+    return { positions: locations.map(decodePosition), nextOffset, size };
+  },
+
+  clearRecording: async () => {
+    if (Platform.OS !== 'android') {
+      return Promise.reject('clearRecording is only for android');
+    }
+
+    return RNFusedLocation.clearRecording();
+  },
+
+  simplifyTrack: async (track, tolerance, format = 'polyline') => {
+    if (Platform.OS !== 'android') {
+      return Promise.reject('simplifyTrack is only for android');
+    }
+
+    return RNFusedLocation.simplifyTrack(track, tolerance, format);
+  },
+
+  simplifyRecording: async (tolerance, format = 'polyline') => {
+    if (Platform.OS !== 'android') {
+      return Promise.reject('simplifyRecording is only for android');
+    }
+
+    return RNFusedLocation.simplifyRecording(tolerance, format);
+  },
+
+  startTrackSimplification: async (tolerance) => {
+    if (Platform.OS !== 'android') {
+      return Promise.reject('startTrackSimplification is only for android');
+    }
+
+    return RNFusedLocation.startTrackSimplification(tolerance);
+  },
+
+  getSimplifiedTrack: async (format = 'polyline') => {
+    if (Platform.OS !== 'android') {
+      return Promise.reject('getSimplifiedTrack is only for android');
+    }
+
+    return RNFusedLocation.getSimplifiedTrack(format);
+  },
+
+  stopTrackSimplification: async () => {
+    if (Platform.OS !== 'android') {
+      return Promise.reject('stopTrackSimplification is only for android');
+    }
+
+    return RNFusedLocation.stopTrackSimplification();
+  },
+
+  addGeofences: async (geofences, options = {}) => {
+    if (Platform.OS !== 'android') {
+      return Promise.reject('addGeofences is only for android');
+    }
+
+    return RNFusedLocation.addGeofences(geofences, resolveOptions(options));
+  },
+
+  removeGeofences: async (ids) => {
+    if (Platform.OS !== 'android') {
+      return Promise.reject('removeGeofences is only for android');
+    }
+
+    return RNFusedLocation.removeGeofences(ids);
+  },
+
+  clearGeofences: async () => {
+    if (Platform.OS !== 'android') {
+      return Promise.reject('clearGeofences is only for android');
+    }
+
+    return RNFusedLocation.clearGeofences();
+  },
+
+  startBackgroundUpdates: async (options = {}) => {
+    if (Platform.OS !== 'android') {
+      return Promise.reject('startBackgroundUpdates is only for android');
+    }
+
+    return RNFusedLocation.startBackgroundUpdates(resolveOptions(options));
+  },
+
+  stopBackgroundUpdates: async () => {
+    if (Platform.OS !== 'android') {
+      return Promise.reject('stopBackgroundUpdates is only for android');
+    }
+
+    return RNFusedLocation.stopBackgroundUpdates();
+  },
+
+  flushBackgroundLocations: async (limit = 1000) => {
+    if (Platform.OS !== 'android') {
+      return Promise.reject('flushBackgroundLocations is only for android');
+    }
+
+    const { locations, remaining, dropped } = await RNFusedLocation.flushBackgroundLocations(limit);
+    return { positions: locations.map(decodePosition), remaining, dropped };
+  },
+
+  addBackgroundLocationListener: (listener) => {
+    if (Platform.OS !== 'android') {
+      throw new Error('addBackgroundLocationListener is only for android');
+    }
+
+    const subscription = LocationEventEmitter.addListener(
+      'geolocationBackgroundBatch',
+      ({ locations, dropped }) => listener(locations.map(decodePosition), dropped)
+    );
+    let removed = false;
+
+    // Native only drains stored locations while someone listens.
+    backgroundListenerCount += 1;
+
+    if (backgroundListenerCount === 1) {
+      RNFusedLocation.setBackgroundBatchObserved(true);
+    }
+
+    return {
+      remove: () => {
+        if (removed) {
+          return;
+        }
+
+        removed = true;
+        subscription.remove();
+        backgroundListenerCount -= 1;
+
+        if (backgroundListenerCount === 0) {
+          RNFusedLocation.setBackgroundBatchObserved(false);
+        }
+      }
+    };
+  },
+
+  addSamplingChangeListener: (listener) => {
+    if (Platform.OS !== 'android') {
+      throw new Error('addSamplingChangeListener is only for android');
+    }
+
+    return LocationEventEmitter.addListener('geolocationSamplingChange', listener);
+  },
+
+  addGeofenceListener: (listener) => {
+    if (Platform.OS !== 'android') {
+      throw new Error('addGeofenceListener is only for android');
+    }
+
+    const geofenceSubscriptions = Object.keys(GEOFENCE_EVENTS).map(type => (
+      LocationEventEmitter.addListener(
+        GEOFENCE_EVENTS[type],
+        ({ id, position }) => listener({ type, id, position })
+      )
+    ));
+
+    return {
+      remove: () => geofenceSubscriptions.forEach(sub => sub.remove())
+    };
+  },
+
   stopObserving: () => {
+    if (updatesEnabled && Platform.OS === 'android') {
+      RNFusedLocation.stopObserving();
+      updatesEnabled = false;
+
+      if (watchers.some(watcher => watcher)) {
+        // eslint-disable-next-line no-console
+        console.warn('Called stopObserving with existing subscriptions.');
+      }
+
+      subscriptions.forEach(sub => sub.remove());
+      subscriptions = [];
+      watchers = [];
+      return;
+    }
+
     if (updatesEnabled) {
       RNFusedLocation.stopObserving();
       updatesEnabled = false;